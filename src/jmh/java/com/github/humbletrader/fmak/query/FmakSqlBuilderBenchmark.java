@@ -0,0 +1,122 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.SequencedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmarks for the hot paths of the sql builder.
+ * Run them with: mvn -P benchmark verify (the gc profiler reports the allocation rate)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FmakSqlBuilderBenchmark {
+
+    /**
+     * how the values of each filter are searched: all equal, multi-select (any) or ranges (gt / lt pairs)
+     */
+    public enum OperatorMix {
+        EQ, ANY, RANGE
+    }
+
+    @Param({"1", "4", "11"})
+    private int filterCount;
+
+    @Param({"1", "10", "50"})
+    private int valuesPerFilter;
+
+    @Param({"EQ", "ANY", "RANGE"})
+    private OperatorMix operatorMix;
+
+    private FmakSqlBuilder builder;
+    private CachingFmakSqlBuilder cachingBuilder;
+    private Map<String, SequencedSet<SearchValAndOp>> webFilters;
+    private SequencedSet<FilterOpVal> internalFilters;
+
+    @Setup
+    public void setUp(){
+        builder = new FmakSqlBuilder(20);
+        cachingBuilder = new CachingFmakSqlBuilder(builder, 1_000);
+        webFilters = new HashMap<>();
+        SupportedFilter[] filters = SupportedFilter.values();
+        for(int filterIdx = 0; filterIdx < filterCount; filterIdx++){
+            SupportedFilter filter = filters[filterIdx];
+            SequencedSet<SearchValAndOp> values = new LinkedHashSet<>();
+            for(int valueIdx = 0; valueIdx < valuesPerFilter; valueIdx++){
+                values.add(new SearchValAndOp(valueFor(filter.getColumn().sqlType(), valueIdx), operatorFor(valueIdx)));
+            }
+            webFilters.put(filter.getNameInWebsite(), values);
+        }
+        internalFilters = builder.webFiltersToInternalFilters(webFilters);
+    }
+
+    private String operatorFor(int valueIdx){
+        return switch (operatorMix){
+            case EQ -> SqlOperators.EQ.getJsOperator();
+            case ANY -> SqlOperators.ANY.getJsOperator();
+            case RANGE -> valueIdx % 2 == 0 ? SqlOperators.GT.getJsOperator() : SqlOperators.LT.getJsOperator();
+        };
+    }
+
+    private static String valueFor(SqlType sqlType, int valueIdx){
+        return switch (sqlType){
+            case VARCHAR_TYPE -> "VALUE_" + valueIdx;
+            case INT_TYPE -> String.valueOf(2015 + valueIdx);
+            case DOUBLE_TYPE -> String.valueOf(100.5 + valueIdx * 10);
+            case BIGINT_TYPE -> String.valueOf(1_000_000L + valueIdx);
+            case BOOLEAN_TYPE -> String.valueOf(valueIdx % 2 == 0);
+        };
+    }
+
+    @Benchmark
+    public ParameterizedStatement searchSqlForWebFilters(){
+        return builder.buildSearchSqlForWebFilters(webFilters, 3);
+    }
+
+    @Benchmark
+    public ParameterizedStatement distinctValuesSqlForWebFilters(){
+        return builder.buildDistinctValuesSql(webFilters, SupportedFilter.brand.getNameInWebsite());
+    }
+
+    @Benchmark
+    public ParameterizedStatement distinctValuesSqlForInternalFilters(){
+        return builder.buildDistinctValuesSql(internalFilters, SupportedFilter.size);
+    }
+
+    @Benchmark
+    public SequencedSet<FilterOpVal> webFiltersToInternalFilters(){
+        return builder.webFiltersToInternalFilters(webFilters);
+    }
+
+    @Benchmark
+    public ParameterizedStatement cachedSearchSqlForWebFilters(){
+        return cachingBuilder.buildSearchSqlForWebFilters(webFilters, 3);
+    }
+
+    @Benchmark
+    public ParameterizedStatement cachedDistinctValuesSqlForWebFilters(){
+        return cachingBuilder.buildDistinctValuesSql(webFilters, SupportedFilter.brand.getNameInWebsite());
+    }
+
+    @Benchmark
+    public ParameterizedStatement paramStmtBuilderAppend(){
+        ParamStmtBuilder result = new ParamStmtBuilder();
+        for(int valueIdx = 0; valueIdx < valuesPerFilter; valueIdx++){
+            result.append(valueIdx == 0 ? " where" : " and")
+                    .append(" p.year = ?", "2022", SqlType.INT_TYPE)
+                    .append(" and a.price < ?", "1000.5", SqlType.DOUBLE_TYPE)
+                    .append(" and p.brand = ?", "DUOTONE");
+        }
+        return result.build();
+    }
+}
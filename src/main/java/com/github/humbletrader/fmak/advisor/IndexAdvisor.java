@@ -0,0 +1,217 @@
+package com.github.humbletrader.fmak.advisor;
+
+import com.github.humbletrader.fmak.query.*;
+import com.github.humbletrader.fmak.tables.ProductAttributesTable;
+import com.github.humbletrader.fmak.tables.ProductTable;
+import com.github.humbletrader.fmak.tables.ShopTable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * recommends indexes for the query shapes built over a workload.
+ * Register it as the listener of a {@link com.github.humbletrader.fmak.query.FmakSqlBuilder}
+ * (or replay logged shapes with {@link #record(QueryShape, long)}) then read {@link #recommendations()}.
+ *
+ * For each table the key of the index is: the join column, the columns compared with equality / any
+ * (in the order of the where clause) and at most one column compared with a range (last, as it ends the seek).
+ * The columns read by the statement (for the searches: the columns of their projection) but not in the key
+ * are included so that the index covers the statement.
+ * Identical keys recommended by several shapes are merged and ranked by the number of statements.
+ * The autocomplete searches its prefix as a range over {@link FmakSqlBuilder#autocompleteExpression(String)}
+ * so this expression is the range of the key of the autocompleted table.
+ * The distinct values shapes answered by the rollup (see {@link RollupDefinition}) need no index on the base tables.
+ *
+ * This class is thread safe.
+ */
+public class IndexAdvisor implements QueryBuildListener {
+
+    private static final String PRICE = ProductAttributesTable.price.colName();
+
+    private final ConcurrentHashMap<QueryShape, LongAdder> statementsByShape = new ConcurrentHashMap<>();
+    private final RollupDefinition rollup;
+
+    public IndexAdvisor(){
+        this(null);
+    }
+
+    /**
+     * @param rollup    the rollup of the builders whose statements are recorded (null if none)
+     */
+    public IndexAdvisor(RollupDefinition rollup){
+        this.rollup = rollup;
+    }
+
+    @Override
+    public void onStatementBuilt(QueryBuildEvent event) {
+        record(event.shape(), 1);
+    }
+
+    /**
+     * @param shape the shape of the statements
+     * @param statements    how many statements had this shape
+     */
+    public void record(QueryShape shape, long statements){
+        statementsByShape.computeIfAbsent(shape, s -> new LongAdder()).add(statements);
+    }
+
+    /**
+     * @return  the recommended indexes, the most used first
+     */
+    public List<IndexRecommendation> recommendations(){
+        Map<IndexKey, IndexUsage> usageByKey = new LinkedHashMap<>();
+        statementsByShape.forEach((shape, statements) -> {
+            if(rollup != null && rollup.covers(shape)){
+                return;
+            }
+            long count = statements.sum();
+            for(IndexRecommendation recommendation : recommendationsFor(shape, count)){
+                usageByKey.computeIfAbsent(new IndexKey(recommendation.table(), recommendation.keyColumns()), k -> new IndexUsage())
+                        .add(recommendation.includeColumns(), count);
+            }
+        });
+        List<IndexRecommendation> result = new ArrayList<>(usageByKey.size());
+        usageByKey.forEach((key, usage) -> {
+            List<String> includes = new ArrayList<>(usage.includeColumns);
+            includes.removeAll(key.keyColumns());
+            result.add(new IndexRecommendation(key.table(), key.keyColumns(), List.copyOf(includes), usage.frequency));
+        });
+        result.sort(Comparator.comparingLong(IndexRecommendation::frequency).reversed()
+                .thenComparing(IndexRecommendation::table)
+                .thenComparing(IndexRecommendation::indexName));
+        return result;
+    }
+
+    /**
+     * @return  the ddl of all recommended indexes (one statement per line, the most used first)
+     */
+    public String ddl(){
+        return recommendations().stream()
+                .map(recommendation -> recommendation.toDdl() + "; -- used by " + recommendation.frequency() + " statements")
+                .collect(Collectors.joining("\n"));
+    }
+
+    static List<IndexRecommendation> recommendationsFor(QueryShape shape, long frequency){
+        Map<FmakTable, List<String>> keysByTable = new EnumMap<>(FmakTable.class);
+        Map<FmakTable, String> rangeByTable = new EnumMap<>(FmakTable.class);
+        for(QueryShape.FilterShape filter : shape.filters()){
+            FmakTable table = filter.filter().getColumn().table();
+            String column = filter.filter().getColumn().colName();
+            if(isEquality(filter.operators())){
+                keysByTable.computeIfAbsent(table, t -> new ArrayList<>()).add(column);
+            } else if(isRange(filter.operators())){
+                rangeByTable.putIfAbsent(table, column);
+            }
+        }
+        if(shape.kind() == QueryShape.Kind.AUTOCOMPLETE){
+            rangeByTable.put(shape.distinctColumn().getColumn().table(),
+                    "(" + FmakSqlBuilder.autocompleteExpression(shape.distinctColumn().getColumn().colName()) + ")");
+        }
+        rangeByTable.forEach((table, column) -> keysByTable.computeIfAbsent(table, t -> new ArrayList<>()).add(column));
+
+        Projection projection = shape.projection(); //null if the statement is not a search
+        boolean attributesSelected = projection != null && projection.uses(FmakTable.PRODUCT_ATTRIBUTES);
+        boolean count = shape.kind() == QueryShape.Kind.COUNT || shape.kind() == QueryShape.Kind.EXPORT;
+        FmakTable distinctTable = shape.distinctColumn() == null ? null : shape.distinctColumn().getColumn().table();
+        boolean shopsFiltered = keysByTable.containsKey(FmakTable.SHOPS);
+        boolean attributesUsed = attributesSelected || count || keysByTable.containsKey(FmakTable.PRODUCT_ATTRIBUTES)
+                || distinctTable == FmakTable.PRODUCT_ATTRIBUTES;
+
+        List<IndexRecommendation> result = new ArrayList<>(3);
+        if(shopsFiltered){
+            List<String> shopIncludes = new ArrayList<>();
+            shopIncludes.add(ShopTable.id.colName());
+            addSelectedColumns(shopIncludes, projection, FmakTable.SHOPS);
+            result.add(new IndexRecommendation(FmakTable.SHOPS, keysByTable.get(FmakTable.SHOPS), shopIncludes, frequency));
+        }
+
+        List<String> productKeys = new ArrayList<>();
+        if(shopsFiltered){
+            productKeys.add(ProductTable.shop_id.colName()); //the products are reached from the filtered shops
+        }
+        productKeys.addAll(keysByTable.getOrDefault(FmakTable.PRODUCTS, List.of()));
+        if(!productKeys.isEmpty()){
+            List<String> productIncludes = new ArrayList<>();
+            addSelectedColumns(productIncludes, projection, FmakTable.PRODUCTS);
+            if(distinctTable == FmakTable.PRODUCTS){
+                productIncludes.add(shape.distinctColumn().getColumn().colName());
+            }
+            if(!shopsFiltered && projection != null && projection.uses(FmakTable.SHOPS)){
+                productIncludes.add(ProductTable.shop_id.colName()); //the selected shop columns are joined
+            }
+            if(attributesUsed && !productIncludes.contains(ProductTable.id.colName())){
+                productIncludes.add(ProductTable.id.colName());
+            }
+            result.add(new IndexRecommendation(FmakTable.PRODUCTS, productKeys, productIncludes, frequency));
+        }
+
+        if(attributesUsed){
+            List<String> attributeKeys = new ArrayList<>();
+            attributeKeys.add(ProductAttributesTable.product_id.colName()); //the attributes are reached from the products
+            attributeKeys.addAll(keysByTable.getOrDefault(FmakTable.PRODUCT_ATTRIBUTES, List.of()));
+            List<String> attributeIncludes = new ArrayList<>();
+            if(attributesSelected){
+                //the search is ordered by price (or by the minimum price of the products when aggregated)
+                if(!projection.hasAggregates() && !attributeKeys.contains(PRICE) && !rangeByTable.containsKey(FmakTable.PRODUCT_ATTRIBUTES)){
+                    attributeKeys.add(PRICE);
+                } else {
+                    attributeIncludes.add(PRICE);
+                }
+                addSelectedColumns(attributeIncludes, projection, FmakTable.PRODUCT_ATTRIBUTES);
+            }
+            if(distinctTable == FmakTable.PRODUCT_ATTRIBUTES){
+                attributeIncludes.add(shape.distinctColumn().getColumn().colName());
+            }
+            result.add(new IndexRecommendation(FmakTable.PRODUCT_ATTRIBUTES, attributeKeys, attributeIncludes, frequency));
+        }
+        return result;
+    }
+
+    /**
+     * adds the columns of the table selected by the projection (if any) which are not already in the list
+     */
+    private static void addSelectedColumns(List<String> columns, Projection projection, FmakTable table){
+        if(projection == null){
+            return;
+        }
+        for(Projection.Item item : projection.items()){
+            String column = item.column().colName();
+            if(item.column().table() == table && !columns.contains(column)){
+                columns.add(column);
+            }
+        }
+    }
+
+    private static boolean isEquality(List<SqlOperators> operators){
+        for(SqlOperators operator : operators){
+            if(operator == SqlOperators.EQ || operator == SqlOperators.ANY){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRange(List<SqlOperators> operators){
+        for(SqlOperators operator : operators){
+            if(operator == SqlOperators.GT || operator == SqlOperators.GTE || operator == SqlOperators.LT || operator == SqlOperators.LTE){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record IndexKey(FmakTable table, List<String> keyColumns) {
+    }
+
+    private static class IndexUsage {
+        private final Set<String> includeColumns = new LinkedHashSet<>();
+        private long frequency;
+
+        void add(List<String> includes, long statements){
+            includeColumns.addAll(includes);
+            frequency += statements;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.humbletrader.fmak.advisor;
+
+import com.github.humbletrader.fmak.query.FmakTable;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * an index recommended by the {@link IndexAdvisor}
+ *
+ * @param table the indexed table
+ * @param keyColumns    the columns (or parenthesized expressions) of the index, in order
+ * @param includeColumns    the columns only stored in the index (so that it covers the query)
+ * @param frequency the number of statements that would use the index
+ */
+public record IndexRecommendation(FmakTable table, List<String> keyColumns, List<String> includeColumns, long frequency) {
+
+    public String indexName(){
+        StringBuilder result = new StringBuilder("idx_").append(table.tableName());
+        for(String key : keyColumns){
+            //the expressions are named after their words, ie. (lower(brand) collate "C") becomes lower_brand_collate_c
+            result.append("_").append(key.replaceAll("\\W+", " ").trim().replace(' ', '_').toLowerCase(Locale.ROOT));
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return  the "create index" statement (postgres syntax)
+     */
+    public String toDdl(){
+        StringBuilder result = new StringBuilder("create index if not exists ")
+                .append(indexName())
+                .append(" on ").append(table.tableName())
+                .append(" (").append(String.join(", ", keyColumns)).append(")");
+        if(!includeColumns.isEmpty()){
+            result.append(" include (").append(String.join(", ", includeColumns)).append(")");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.humbletrader.fmak.cache;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.jdbc.FmakQueryExecutor;
+import com.github.humbletrader.fmak.jdbc.RowMapper;
+import com.github.humbletrader.fmak.jdbc.SearchRow;
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.FmakTable;
+import com.github.humbletrader.fmak.query.SearchCursor;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * caches the results of the search and distinct values queries by their normalized criteria (see {@link ResultKey}).
+ * The results are evicted when the cache is full (least recently used first), after a time to live
+ * or when one of the tables they read is invalidated (ie. after the products are refreshed).
+ * Concurrent requests for the same missing result wait for a single load. A load overlapping the invalidation
+ * of one of its tables returns its result without caching it (it may have read the data before the change).
+ *
+ * This class is thread safe.
+ */
+public class ResultCache {
+
+    private final FmakSqlBuilder sqlBuilder;
+    private final FmakQueryExecutor executor;
+    private final Cache<ResultKey, List<?>> resultsByKey;
+    private final Map<FmakTable, AtomicLong> generations = new EnumMap<>(FmakTable.class); //incremented by each invalidation
+
+    /**
+     * @param sqlBuilder    the builder of the statements
+     * @param executor  the executor of the statements (for the results not in the cache)
+     * @param maximumSize   the maximum number of results kept in the cache
+     * @param timeToLive    the results are evicted after this interval since they were loaded
+     */
+    public ResultCache(FmakSqlBuilder sqlBuilder, FmakQueryExecutor executor, long maximumSize, Duration timeToLive){
+        this.sqlBuilder = sqlBuilder;
+        this.executor = executor;
+        this.resultsByKey = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+        for(FmakTable table : FmakTable.values()){
+            generations.put(table, new AtomicLong());
+        }
+    }
+
+    public List<SearchRow> search(Map<String, SequencedSet<SearchValAndOp>> criteria, int page){
+        var filters = sqlBuilder.webFiltersToInternalFilters(criteria);
+        return getOrLoad(ResultKey.search(filters, page),
+                () -> executor.list(sqlBuilder.buildSearchSql(filters, page), SearchRow.MAPPER));
+    }
+
+    public List<SearchRow> search(Map<String, SequencedSet<SearchValAndOp>> criteria, SearchCursor after){
+        var filters = sqlBuilder.webFiltersToInternalFilters(criteria);
+        return getOrLoad(ResultKey.search(filters, after),
+                () -> executor.list(sqlBuilder.buildSearchSql(filters, after), SearchRow.KEYSET_MAPPER));
+    }
+
+    public List<String> distinctValues(Map<String, SequencedSet<SearchValAndOp>> criteria, String column){
+        SequencedSet<FilterOpVal> filters = sqlBuilder.webFiltersToInternalFilters(criteria);
+        SupportedFilter distinctColumn = SupportedFilter.requireFilterFromName(column);
+        return getOrLoad(ResultKey.distinct(filters, distinctColumn),
+                () -> executor.list(sqlBuilder.buildDistinctValuesSql(filters, distinctColumn), RowMapper.firstColumnAsString()));
+    }
+
+    /**
+     * @param key   the normalized criteria
+     * @param loader    loads the result when the key is not in the cache
+     * @return  the cached (or loaded) result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getOrLoad(ResultKey key, Supplier<List<T>> loader){
+        try {
+            return (List<T>) resultsByKey.get(key, () -> load(key, loader));
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof StaleResultException staleResult){
+                return (List<T>) staleResult.result;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+        }
+    }
+
+    private <T> List<T> load(ResultKey key, Supplier<List<T>> loader) throws StaleResultException {
+        long generationBefore = generationOf(key.tables());
+        List<T> result = Collections.unmodifiableList(new ArrayList<>(loader.get())); //distinct values may contain null
+        if(generationOf(key.tables()) != generationBefore){
+            throw new StaleResultException(result); //not stored by the cache
+        }
+        return result;
+    }
+
+    private long generationOf(Set<FmakTable> tables){
+        long result = 0;
+        for(FmakTable table : tables){
+            result += generations.get(table).get();
+        }
+        return result;
+    }
+
+    /**
+     * evicts all the results read from the given table (to be called when the data of the table changes)
+     */
+    public void invalidate(FmakTable table){
+        generations.get(table).incrementAndGet(); //before the eviction so that the loads in progress are not cached
+        resultsByKey.asMap().keySet().removeIf(key -> key.touches(table));
+    }
+
+    public void invalidateAll(){
+        generations.values().forEach(AtomicLong::incrementAndGet);
+        resultsByKey.invalidateAll();
+    }
+
+    /**
+     * @return  hit / miss / eviction counters (see {@link CacheStats#hitRate()})
+     */
+    public CacheStats stats(){
+        return resultsByKey.stats();
+    }
+
+    public long size(){
+        return resultsByKey.size();
+    }
+
+    /**
+     * a result loaded while one of its tables was invalidated: returned to the caller but not cached
+     */
+    private static class StaleResultException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<?> result;
+
+        StaleResultException(List<?> result){
+            super(null, null, false, false);
+            this.result = result;
+        }
+    }
+}
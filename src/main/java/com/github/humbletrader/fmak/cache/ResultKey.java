@@ -0,0 +1,84 @@
+package com.github.humbletrader.fmak.cache;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.query.FmakTable;
+import com.github.humbletrader.fmak.query.SearchCursor;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import com.github.humbletrader.fmak.query.SqlOperators;
+
+import java.util.*;
+
+/**
+ * the key of a cached result: a normalized form of the criteria so that logically identical requests
+ * (filters received in a different order, values in a different order or repeated) have the same key.
+ * The filters are sorted by {@link SupportedFilter}, the conditions of each filter by operator and value.
+ *
+ * @param kind  the kind of query
+ * @param distinctColumn    the column for distinct values queries (null for the other kinds)
+ * @param filters   the normalized filters
+ * @param page  the page for paged searches (0 for the other kinds)
+ * @param after the cursor for keyset searches (null for the first page and for the other kinds)
+ * @param tables    the tables read by the query (used for invalidation)
+ */
+public record ResultKey(Kind kind,
+                        SupportedFilter distinctColumn,
+                        List<NormalizedFilter> filters,
+                        int page,
+                        SearchCursor after,
+                        Set<FmakTable> tables) {
+
+    public enum Kind {
+        PAGED_SEARCH, KEYSET_SEARCH, DISTINCT
+    }
+
+    public record Condition(SqlOperators op, String value) {
+    }
+
+    public record NormalizedFilter(SupportedFilter filter, List<Condition> conditions) {
+    }
+
+    private static final Comparator<Condition> CONDITION_ORDER = Comparator
+            .comparing(Condition::op)
+            .thenComparing(Condition::value, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    public static ResultKey search(SequencedSet<FilterOpVal> criteria, int page){
+        return new ResultKey(Kind.PAGED_SEARCH, null, normalize(criteria), page, null,
+                tables(criteria, FmakTable.PRODUCT_ATTRIBUTES));
+    }
+
+    public static ResultKey search(SequencedSet<FilterOpVal> criteria, SearchCursor after){
+        return new ResultKey(Kind.KEYSET_SEARCH, null, normalize(criteria), 0, after,
+                tables(criteria, FmakTable.PRODUCT_ATTRIBUTES));
+    }
+
+    public static ResultKey distinct(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        return new ResultKey(Kind.DISTINCT, distinctColumn, normalize(criteria), 0, null,
+                tables(criteria, distinctColumn.getColumn().table()));
+    }
+
+    public boolean touches(FmakTable table){
+        return tables.contains(table);
+    }
+
+    private static List<NormalizedFilter> normalize(SequencedSet<FilterOpVal> criteria){
+        Map<SupportedFilter, SortedSet<Condition>> conditionsByFilter = new EnumMap<>(SupportedFilter.class);
+        for(FilterOpVal filterOpVal : criteria){
+            SortedSet<Condition> conditions = conditionsByFilter.computeIfAbsent(filterOpVal.filter(), f -> new TreeSet<>(CONDITION_ORDER));
+            for(SearchValAndOp searchValAndOp : filterOpVal.values()){
+                conditions.add(new Condition(SqlOperators.forJs(searchValAndOp.op()), searchValAndOp.value()));
+            }
+        }
+        List<NormalizedFilter> result = new ArrayList<>(conditionsByFilter.size());
+        conditionsByFilter.forEach((filter, conditions) -> result.add(new NormalizedFilter(filter, List.copyOf(conditions))));
+        return List.copyOf(result);
+    }
+
+    private static Set<FmakTable> tables(SequencedSet<FilterOpVal> criteria, FmakTable selectedTable){
+        Set<FmakTable> result = EnumSet.of(FmakTable.PRODUCTS, selectedTable);
+        for(FilterOpVal filterOpVal : criteria){
+            result.add(filterOpVal.filter().getColumn().table());
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
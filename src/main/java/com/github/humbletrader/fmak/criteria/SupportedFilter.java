@@ -4,8 +4,9 @@ import com.github.humbletrader.fmak.query.FmakColumn;
 import com.github.humbletrader.fmak.tables.ProductAttributesTable;
 import com.github.humbletrader.fmak.tables.ProductTable;
 import com.github.humbletrader.fmak.tables.ShopTable;
+import com.google.common.collect.Maps;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
 public enum SupportedFilter {
@@ -23,11 +24,7 @@ public enum SupportedFilter {
     price("price", ProductAttributesTable.price, 300),
     tech("construction_tech", ProductTable.construction_tech, 300);
 
-    //inspired by this: https://stackoverflow.com/questions/27703119/convert-from-string-to-a-java-enum-with-large-amount-of-values/27703839#27703839
-    private static class Holder {
-        static Map<String, SupportedFilter> STRING_TO_FILTER = new HashMap<>();
-    }
-
+    private static final Map<String, SupportedFilter> STRING_TO_FILTER = Maps.uniqueIndex(Arrays.asList(values()), SupportedFilter::getNameInWebsite);
 
     private final String nameInWebsite;
     private final FmakColumn column;
@@ -37,7 +34,6 @@ public enum SupportedFilter {
         this.nameInWebsite = nameInWebsite;
         this.column = column;
         this.priorityInSqlWhereClause = priorityInSqlWhereClause;
-        Holder.STRING_TO_FILTER.put(nameInWebsite, this);
     }
 
     public FmakColumn getColumn(){
@@ -52,7 +48,22 @@ public enum SupportedFilter {
         return nameInWebsite;
     }
 
+    /**
+     * @return  the filter having the given name in website or null if there is no such filter
+     */
     public static SupportedFilter filterFromName(String filterNameInWeb){
-        return Holder.STRING_TO_FILTER.get(filterNameInWeb);
+        return filterNameInWeb == null ? null : STRING_TO_FILTER.get(filterNameInWeb);
+    }
+
+    /**
+     * @return  the filter having the given name in website
+     * @throws IllegalArgumentException if there is no such filter
+     */
+    public static SupportedFilter requireFilterFromName(String filterNameInWeb){
+        SupportedFilter result = filterFromName(filterNameInWeb);
+        if(result == null){
+            throw new IllegalArgumentException("No filter found for name in website: " + filterNameInWeb);
+        }
+        return result;
     }
 }
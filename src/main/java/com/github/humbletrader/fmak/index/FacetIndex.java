@@ -0,0 +1,388 @@
+package com.github.humbletrader.fmak.index;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.jdbc.FmakJdbcException;
+import com.github.humbletrader.fmak.query.FmakTable;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import com.github.humbletrader.fmak.query.SqlOperators;
+import com.github.humbletrader.fmak.query.SqlType;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * an in memory index answering the 'distinct values' queries without the db.
+ * Each row of the index is a product joined with its shop and one of its attributes
+ * (a product without attributes is a single row with empty attributes).
+ * The columns of all the {@link SupportedFilter}s are dictionary encoded: the distinct values are sorted and
+ * each row keeps the ordinal of its value, while the row ids are also kept grouped by ordinal
+ * (with the offset of the first row of each ordinal). So the rows of a value, or of a range of values,
+ * are a single slice of this array and the memory does not depend on the number of distinct values (8 bytes per row and column).
+ * The criteria are evaluated starting from the rows of the most selective condition and checking the others on the ordinals.
+ *
+ * The conditions follow the sql semantics for nulls (a null value matches no condition, not even 'ne').
+ * The varchar values are compared (ranges, order of the results) by their java order which is the order
+ * of the db only for the "C" collation: with a linguistic collation the varchar ranges and the order
+ * of the varchar values may differ from the ones of the statements.
+ *
+ * The index is immutable (thread safe), see {@link RefreshableFacetIndex} for refreshing it.
+ */
+public class FacetIndex {
+
+    private static final int NULL_ORDINAL = -1;
+
+    //same exclusions as the distinct values statements of FmakSqlBuilder
+    private static final Map<SupportedFilter, Set<String>> FORBIDDEN_DISTINCT_VALUES = Map.of(
+            SupportedFilter.year, Set.of("-1", "-2"),
+            SupportedFilter.version, Set.of("not needed", "unknown")
+    );
+
+    private final int rowCount;
+    private final BitSet rowsWithAttributes;
+    private final Map<SupportedFilter, ColumnIndex> columns;
+
+    private FacetIndex(int rowCount, BitSet rowsWithAttributes, Map<SupportedFilter, ColumnIndex> columns){
+        this.rowCount = rowCount;
+        this.rowsWithAttributes = rowsWithAttributes;
+        this.columns = columns;
+    }
+
+    /**
+     * loads all the products, shops and attributes from the db
+     */
+    public static FacetIndex load(DataSource dataSource){
+        StringBuilder snapshotSql = new StringBuilder("select a.id");
+        for(SupportedFilter filter : SupportedFilter.values()){
+            snapshotSql.append(", ").append(filter.getColumn().prefixedColumnName());
+        }
+        snapshotSql.append(" from products p")
+                .append(" inner join shops s on s.id = p.shop_id")
+                .append(" left join product_attributes a on p.id = a.product_id");
+
+        try(Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery(snapshotSql.toString())){
+            Builder builder = new Builder();
+            Map<SupportedFilter, String> row = new EnumMap<>(SupportedFilter.class);
+            SupportedFilter[] filters = SupportedFilter.values();
+            while(resultSet.next()){
+                resultSet.getLong(1);
+                boolean hasAttributes = !resultSet.wasNull();
+                for(int i = 0; i < filters.length; i++){
+                    row.put(filters[i], resultSet.getString(i + 2));
+                }
+                builder.addRow(row, hasAttributes);
+            }
+            return builder.build();
+        } catch (SQLException e) {
+            throw new FmakJdbcException("error loading the facet index", e);
+        }
+    }
+
+    public int rowCount(){
+        return rowCount;
+    }
+
+    /**
+     * same values as the ones returned by the statement built by
+     * {@link com.github.humbletrader.fmak.query.FmakSqlBuilder#buildDistinctValuesSql(SequencedSet, SupportedFilter)}
+     * (see the class comment for the order of the varchar values)
+     * @param criteria  the criteria
+     * @param distinctColumn    the column for which we need the distinct values
+     * @return  the distinct values (sorted according to the type of the column, null last)
+     */
+    public List<String> distinctValues(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        List<Condition> conditions = new ArrayList<>(criteria.size());
+        for(FilterOpVal filterOpVal : criteria){
+            conditions.add(columns.get(filterOpVal.filter()).condition(filterOpVal));
+        }
+        boolean attributesJoined = distinctColumn.getColumn().table() == FmakTable.PRODUCT_ATTRIBUTES;
+        ColumnIndex column = columns.get(distinctColumn);
+        BitSet foundOrdinals = new BitSet(column.keys.size());
+        boolean[] foundNull = new boolean[1];
+        forEachCandidateRow(conditions, row -> {
+            if(matchesAll(conditions, row) && (!attributesJoined || rowsWithAttributes.get(row))){
+                int ordinal = column.ordinalByRow[row];
+                if(ordinal == NULL_ORDINAL){
+                    foundNull[0] = true;
+                } else {
+                    foundOrdinals.set(ordinal);
+                }
+            }
+        });
+
+        Set<String> forbiddenValues = FORBIDDEN_DISTINCT_VALUES.getOrDefault(distinctColumn, Set.of());
+        List<String> result = new ArrayList<>(foundOrdinals.cardinality() + 1);
+        for(int ordinal = foundOrdinals.nextSetBit(0); ordinal >= 0; ordinal = foundOrdinals.nextSetBit(ordinal + 1)){
+            if(!forbiddenValues.contains(column.labels[ordinal])){
+                result.add(column.labels[ordinal]);
+            }
+        }
+        if(foundNull[0] && forbiddenValues.isEmpty()){ //as in sql, "year <> -1" excludes the null years
+            result.add(null);
+        }
+        return result;
+    }
+
+    /**
+     * visits the rows of the most selective condition (all the rows if there is no condition)
+     */
+    private void forEachCandidateRow(List<Condition> conditions, IntConsumer action){
+        Condition mostSelective = null;
+        for(Condition condition : conditions){
+            if(mostSelective == null || condition.candidateRows() < mostSelective.candidateRows()){
+                mostSelective = condition;
+            }
+        }
+        if(mostSelective == null){
+            for(int row = 0; row < rowCount; row++){
+                action.accept(row);
+            }
+        } else {
+            mostSelective.forEachCandidateRow(action);
+        }
+    }
+
+    private static boolean matchesAll(List<Condition> conditions, int row){
+        for(Condition condition : conditions){
+            if(!condition.matches(row)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the conditions of a filter translated to ordinals: the ordinal of the value should be in [fromOrdinal, toOrdinal),
+     * not excluded (the 'ne' values) and one of the 'any' values (if any)
+     *
+     * @param anyOrdinals   the ordinals of the 'any' values (null if the filter has no 'any' value)
+     */
+    private record Condition(ColumnIndex column, int fromOrdinal, int toOrdinal, BitSet excludedOrdinals, BitSet anyOrdinals) {
+
+        boolean matches(int row){
+            int ordinal = column.ordinalByRow[row];
+            return ordinal >= fromOrdinal && ordinal < toOrdinal //the null ordinal is negative
+                    && !excludedOrdinals.get(ordinal)
+                    && (anyOrdinals == null || anyOrdinals.get(ordinal));
+        }
+
+        int candidateRows(){
+            if(fromOrdinal >= toOrdinal){
+                return 0;
+            }
+            if(anyOrdinals == null){
+                return column.firstRowOfOrdinal[toOrdinal] - column.firstRowOfOrdinal[fromOrdinal];
+            }
+            int result = 0;
+            for(int ordinal = anyOrdinals.nextSetBit(fromOrdinal); ordinal >= 0 && ordinal < toOrdinal; ordinal = anyOrdinals.nextSetBit(ordinal + 1)){
+                result += column.firstRowOfOrdinal[ordinal + 1] - column.firstRowOfOrdinal[ordinal];
+            }
+            return result;
+        }
+
+        void forEachCandidateRow(IntConsumer action){
+            if(anyOrdinals == null){
+                column.forEachRowIn(fromOrdinal, toOrdinal, action);
+            } else {
+                for(int ordinal = anyOrdinals.nextSetBit(fromOrdinal); ordinal >= 0 && ordinal < toOrdinal; ordinal = anyOrdinals.nextSetBit(ordinal + 1)){
+                    column.forEachRowIn(ordinal, ordinal + 1, action);
+                }
+            }
+        }
+    }
+
+    /**
+     * a dictionary encoded column: the sorted distinct values, the ordinal of the value of each row
+     * and the rows grouped by ordinal
+     */
+    private static class ColumnIndex {
+
+        private final SqlType sqlType;
+        private final List<Comparable<Object>> keys;  //typed (String, Integer, Double, etc), sorted
+        private final String[] labels;    //the values as read from the db
+        private final int[] ordinalByRow;   //NULL_ORDINAL for the null values
+        private final int[] rowsByOrdinal;  //the rows of the first value, then the rows of the second value, etc (nulls excluded)
+        private final int[] firstRowOfOrdinal;  //the rows of ordinal i are rowsByOrdinal[firstRowOfOrdinal[i] .. firstRowOfOrdinal[i + 1])
+
+        ColumnIndex(SqlType sqlType, List<Comparable<Object>> keys, String[] labels, int[] ordinalByRow){
+            this.sqlType = sqlType;
+            this.keys = keys;
+            this.labels = labels;
+            this.ordinalByRow = ordinalByRow;
+            this.firstRowOfOrdinal = new int[keys.size() + 1];
+            for(int ordinal : ordinalByRow){
+                if(ordinal != NULL_ORDINAL){
+                    firstRowOfOrdinal[ordinal + 1]++;
+                }
+            }
+            for(int i = 0; i < keys.size(); i++){
+                firstRowOfOrdinal[i + 1] += firstRowOfOrdinal[i];
+            }
+            this.rowsByOrdinal = new int[firstRowOfOrdinal[keys.size()]];
+            int[] nextPosition = Arrays.copyOf(firstRowOfOrdinal, keys.size());
+            for(int row = 0; row < ordinalByRow.length; row++){
+                if(ordinalByRow[row] != NULL_ORDINAL){
+                    rowsByOrdinal[nextPosition[ordinalByRow[row]]++] = row;
+                }
+            }
+        }
+
+        Condition condition(FilterOpVal filterOpVal){
+            int fromOrdinal = 0;
+            int toOrdinal = keys.size();
+            BitSet excludedOrdinals = new BitSet();
+            BitSet anyOrdinals = null;
+            for(SearchValAndOp searchValAndOp : filterOpVal.values()){
+                var sqlOp = SqlOperators.forJs(searchValAndOp.op());
+                int idx = Collections.binarySearch(keys, typedKey(sqlType, searchValAndOp.value()));
+                boolean found = idx >= 0;
+                int insertionPoint = found ? idx : -idx - 1;
+                switch (sqlOp){
+                    case EQ -> {
+                        fromOrdinal = Math.max(fromOrdinal, insertionPoint);
+                        toOrdinal = Math.min(toOrdinal, found ? idx + 1 : insertionPoint);
+                    }
+                    case NE -> {
+                        if(found){
+                            excludedOrdinals.set(idx);
+                        }
+                    }
+                    case ANY -> {
+                        if(anyOrdinals == null){
+                            anyOrdinals = new BitSet(keys.size());
+                        }
+                        if(found){
+                            anyOrdinals.set(idx);
+                        }
+                    }
+                    case GT -> fromOrdinal = Math.max(fromOrdinal, found ? idx + 1 : insertionPoint);
+                    case GTE -> fromOrdinal = Math.max(fromOrdinal, insertionPoint);
+                    case LT -> toOrdinal = Math.min(toOrdinal, insertionPoint);
+                    case LTE -> toOrdinal = Math.min(toOrdinal, found ? idx + 1 : insertionPoint);
+                }
+            }
+            return new Condition(this, fromOrdinal, toOrdinal, excludedOrdinals, anyOrdinals);
+        }
+
+        void forEachRowIn(int fromOrdinal, int toOrdinal, IntConsumer action){
+            for(int i = firstRowOfOrdinal[fromOrdinal]; i < firstRowOfOrdinal[toOrdinal]; i++){
+                action.accept(rowsByOrdinal[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> typedKey(SqlType sqlType, String value){
+        Comparable<?> result = switch (sqlType){
+            case VARCHAR_TYPE -> value;
+            case INT_TYPE -> Integer.valueOf(value);
+            case DOUBLE_TYPE -> Double.valueOf(value);
+            case BIGINT_TYPE -> Long.valueOf(value);
+            case BOOLEAN_TYPE -> Boolean.valueOf(value);
+        };
+        return (Comparable<Object>) result;
+    }
+
+    /**
+     * builds an index row by row
+     */
+    public static class Builder {
+
+        private final Map<SupportedFilter, ColumnBuilder> columns = new EnumMap<>(SupportedFilter.class);
+        private final BitSet rowsWithAttributes = new BitSet();
+        private int rowCount;
+
+        public Builder(){
+            for(SupportedFilter filter : SupportedFilter.values()){
+                columns.put(filter, new ColumnBuilder(filter.getColumn().sqlType()));
+            }
+        }
+
+        /**
+         * @param values    the value of each column (missing columns are null)
+         * @param hasAttributes false if the row is a product without attributes
+         */
+        public Builder addRow(Map<SupportedFilter, String> values, boolean hasAttributes){
+            int row = rowCount++;
+            if(hasAttributes){
+                rowsWithAttributes.set(row);
+            }
+            for(SupportedFilter filter : SupportedFilter.values()){
+                columns.get(filter).add(row, values.get(filter));
+            }
+            return this;
+        }
+
+        public FacetIndex build(){
+            Map<SupportedFilter, ColumnIndex> result = new EnumMap<>(SupportedFilter.class);
+            for(SupportedFilter filter : SupportedFilter.values()){
+                result.put(filter, columns.get(filter).build(rowCount));
+            }
+            return new FacetIndex(rowCount, (BitSet) rowsWithAttributes.clone(), result);
+        }
+    }
+
+    /**
+     * collects the values of a column: each new value gets a temporary id (in the order of appearance)
+     * replaced by its ordinal in the sorted values when the index is built
+     */
+    private static class ColumnBuilder {
+
+        private final SqlType sqlType;
+        private final Map<Comparable<Object>, Integer> idByKey = new HashMap<>();
+        private final List<Comparable<Object>> keys = new ArrayList<>();
+        private final List<String> labels = new ArrayList<>();
+        private int[] idByRow = new int[16];
+
+        ColumnBuilder(SqlType sqlType){
+            this.sqlType = sqlType;
+        }
+
+        void add(int row, String value){
+            if(row == idByRow.length){
+                idByRow = Arrays.copyOf(idByRow, row * 2);
+            }
+            if(value == null){
+                idByRow[row] = NULL_ORDINAL;
+            } else {
+                Comparable<Object> key = typedKey(sqlType, value);
+                Integer id = idByKey.get(key);
+                if(id == null){
+                    id = keys.size();
+                    idByKey.put(key, id);
+                    keys.add(key);
+                    labels.add(value);
+                }
+                idByRow[row] = id;
+            }
+        }
+
+        ColumnIndex build(int rowCount){
+            Integer[] idsInOrder = new Integer[keys.size()];
+            for(int i = 0; i < idsInOrder.length; i++){
+                idsInOrder[i] = i;
+            }
+            Arrays.sort(idsInOrder, Comparator.comparing(keys::get));
+            List<Comparable<Object>> sortedKeys = new ArrayList<>(idsInOrder.length);
+            String[] sortedLabels = new String[idsInOrder.length];
+            int[] ordinalById = new int[idsInOrder.length];
+            for(int ordinal = 0; ordinal < idsInOrder.length; ordinal++){
+                sortedKeys.add(keys.get(idsInOrder[ordinal]));
+                sortedLabels[ordinal] = labels.get(idsInOrder[ordinal]);
+                ordinalById[idsInOrder[ordinal]] = ordinal;
+            }
+            int[] ordinalByRow = new int[rowCount];
+            for(int row = 0; row < rowCount; row++){
+                ordinalByRow[row] = idByRow[row] == NULL_ORDINAL ? NULL_ORDINAL : ordinalById[idByRow[row]];
+            }
+            return new ColumnIndex(sqlType, sortedKeys, sortedLabels, ordinalByRow);
+        }
+    }
+}
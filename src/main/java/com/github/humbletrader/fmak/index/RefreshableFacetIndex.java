@@ -0,0 +1,47 @@
+package com.github.humbletrader.fmak.index;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.SequencedSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * holds the current {@link FacetIndex} and replaces it atomically on refresh:
+ * the queries running during a refresh use the previous index, the next ones the new index.
+ *
+ * This class is thread safe.
+ */
+public class RefreshableFacetIndex {
+
+    private final DataSource dataSource;
+    private final AtomicReference<FacetIndex> current;
+
+    /**
+     * creates the holder and loads the first index
+     */
+    public RefreshableFacetIndex(DataSource dataSource){
+        this.dataSource = dataSource;
+        this.current = new AtomicReference<>(FacetIndex.load(dataSource));
+    }
+
+    /**
+     * loads a new index from the db and swaps it with the current one
+     * @return  the new index
+     */
+    public FacetIndex refresh(){
+        FacetIndex newIndex = FacetIndex.load(dataSource);
+        current.set(newIndex);
+        return newIndex;
+    }
+
+    public FacetIndex current(){
+        return current.get();
+    }
+
+    public List<String> distinctValues(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        return current.get().distinctValues(criteria, distinctColumn);
+    }
+}
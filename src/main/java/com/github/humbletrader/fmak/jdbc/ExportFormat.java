@@ -0,0 +1,112 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * the formats of the exports: each row is written as soon as it is read
+ */
+public enum ExportFormat {
+
+    /**
+     * comma separated values (RFC 4180) with a header line
+     */
+    CSV {
+        @Override
+        void writeHeader(Writer out, List<String> columnNames) throws IOException {
+            for(int i = 0; i < columnNames.size(); i++){
+                if(i > 0){
+                    out.write(',');
+                }
+                writeCsvString(out, columnNames.get(i));
+            }
+            out.write('\n');
+        }
+
+        @Override
+        void writeRow(Writer out, List<String> columnNames, Object[] values) throws IOException {
+            for(int i = 0; i < values.length; i++){
+                if(i > 0){
+                    out.write(',');
+                }
+                switch (values[i]){
+                    case null -> {}
+                    case String string -> writeCsvString(out, string);
+                    default -> out.write(values[i].toString());
+                }
+            }
+            out.write('\n');
+        }
+    },
+
+    /**
+     * one json object per line
+     */
+    NDJSON {
+        @Override
+        void writeHeader(Writer out, List<String> columnNames) {
+            //each row contains the names of its columns
+        }
+
+        @Override
+        void writeRow(Writer out, List<String> columnNames, Object[] values) throws IOException {
+            out.write('{');
+            for(int i = 0; i < values.length; i++){
+                if(i > 0){
+                    out.write(',');
+                }
+                writeJsonString(out, columnNames.get(i));
+                out.write(':');
+                switch (values[i]){
+                    case null -> out.write("null");
+                    case String string -> writeJsonString(out, string);
+                    case Double number when number.isNaN() || number.isInfinite() -> out.write("null");
+                    default -> out.write(values[i].toString());
+                }
+            }
+            out.write("}\n");
+        }
+    };
+
+    abstract void writeHeader(Writer out, List<String> columnNames) throws IOException;
+
+    /**
+     * @param values    the values of the row (String, Integer, Long, Double, Boolean or null)
+     */
+    abstract void writeRow(Writer out, List<String> columnNames, Object[] values) throws IOException;
+
+    private static void writeCsvString(Writer out, String value) throws IOException {
+        boolean needsQuotes = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if(!needsQuotes){
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private static void writeJsonString(Writer out, String value) throws IOException {
+        out.write('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch (c){
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    if(c < 0x20){
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * loads the distinct values of several facets concurrently: one statement per facet, each executed
+ * on its own virtual thread and connection, so the latency is the one of the slowest statement
+ * instead of the sum of all. The number of statements running at once (across all requests) is bounded
+ * so that the connection pool is not exhausted, and each request has a deadline after which
+ * the facets not loaded yet are abandoned (partial results): their statements are cancelled in the db
+ * (interrupting the thread is not enough, the jdbc drivers ignore it while reading the socket) and each statement
+ * also has a query timeout matching the time left, so a slow facet does not keep its connection and permit.
+ *
+ * This class is thread safe. Close it to stop its threads.
+ */
+public class FacetFanOut implements AutoCloseable {
+
+    private final FmakSqlBuilder sqlBuilder;
+    private final FmakQueryExecutor executor;
+    private final Semaphore runningQueries;
+    private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param sqlBuilder    the builder of the distinct values statements
+     * @param executor  the executor of the statements
+     * @param maxConcurrentQueries  the maximum number of statements executed at once (should not exceed the size of the pool)
+     */
+    public FacetFanOut(FmakSqlBuilder sqlBuilder, FmakQueryExecutor executor, int maxConcurrentQueries){
+        if(maxConcurrentQueries <= 0){
+            throw new IllegalArgumentException("the number of concurrent queries should be positive but was " + maxConcurrentQueries);
+        }
+        this.sqlBuilder = sqlBuilder;
+        this.executor = executor;
+        this.runningQueries = new Semaphore(maxConcurrentQueries);
+    }
+
+    public FacetResults distinctValues(Map<String, SequencedSet<SearchValAndOp>> criteria,
+                                       SequencedSet<SupportedFilter> facets,
+                                       Duration timeout){
+        //the web filters are validated and normalized once for all the facets
+        return distinctValues(sqlBuilder.webFiltersToInternalFilters(criteria), facets, timeout);
+    }
+
+    /**
+     * @param criteria  the criteria (shared by all facets)
+     * @param facets    the columns for which the distinct values are loaded
+     * @param timeout   the maximum time to wait for all the facets
+     * @return  the values of the facets loaded before the timeout (or before the calling thread was interrupted)
+     */
+    public FacetResults distinctValues(SequencedSet<FilterOpVal> criteria,
+                                       SequencedSet<SupportedFilter> facets,
+                                       Duration timeout){
+        long deadline = System.nanoTime() + timeout.toNanos();
+        SequencedMap<SupportedFilter, Future<List<String>>> futures = new LinkedHashMap<>();
+        Map<SupportedFilter, FmakSession> runningSessions = new ConcurrentHashMap<>();
+        for(SupportedFilter facet : facets){
+            futures.put(facet, virtualThreads.submit(() -> loadFacet(criteria, facet, deadline, runningSessions)));
+        }
+
+        SequencedMap<SupportedFilter, List<String>> values = new LinkedHashMap<>();
+        Set<SupportedFilter> timedOut = EnumSet.noneOf(SupportedFilter.class);
+        Map<SupportedFilter, RuntimeException> failures = new EnumMap<>(SupportedFilter.class);
+        for(var facetAndFuture : futures.entrySet()){
+            SupportedFilter facet = facetAndFuture.getKey();
+            Future<List<String>> future = facetAndFuture.getValue();
+            try {
+                values.put(facet, future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                cancelStatement(runningSessions, facet); //before the interrupt which ends the loading thread
+                future.cancel(true);
+                timedOut.add(facet);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof TimeoutException){ //no connection available before the deadline
+                    timedOut.add(facet);
+                } else {
+                    failures.put(facet, e.getCause() instanceof RuntimeException runtimeException ?
+                            runtimeException : new IllegalStateException(e.getCause()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                runningSessions.values().forEach(FmakSession::cancel);
+                futures.values().forEach(pending -> pending.cancel(true));
+                for(SupportedFilter abandoned : futures.keySet()){
+                    if(!values.containsKey(abandoned) && !failures.containsKey(abandoned)){
+                        timedOut.add(abandoned);
+                    }
+                }
+                break; //the other futures are cancelled, get would throw
+            }
+        }
+        return new FacetResults(values, timedOut, failures);
+    }
+
+    private List<String> loadFacet(SequencedSet<FilterOpVal> criteria,
+                                   SupportedFilter facet,
+                                   long deadline,
+                                   Map<SupportedFilter, FmakSession> runningSessions)
+            throws InterruptedException, TimeoutException {
+        if(!runningQueries.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)){
+            throw new TimeoutException("no permit for facet " + facet);
+        }
+        try(FmakSession session = executor.openSession()){
+            runningSessions.put(facet, session);
+            if(Thread.interrupted()){ //abandoned while waiting for the connection
+                throw new InterruptedException("facet " + facet + " abandoned");
+            }
+            return session.list(sqlBuilder.buildDistinctValuesSql(criteria, facet), RowMapper.firstColumnAsString(),
+                    Duration.ofNanos(deadline - System.nanoTime()));
+        } finally {
+            runningSessions.remove(facet);
+            runningQueries.release();
+        }
+    }
+
+    private static void cancelStatement(Map<SupportedFilter, FmakSession> runningSessions, SupportedFilter facet){
+        FmakSession session = runningSessions.get(facet);
+        if(session != null){
+            session.cancel();
+        }
+    }
+
+    @Override
+    public void close() {
+        virtualThreads.shutdownNow();
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SequencedMap;
+import java.util.Set;
+
+/**
+ * the distinct values of several facets loaded by {@link FacetFanOut}
+ *
+ * @param valuesByFacet the distinct values of the facets loaded in time (in the order the facets were requested)
+ * @param timedOut  the facets not loaded before the deadline
+ * @param failures  the facets whose query failed and the cause
+ */
+public record FacetResults(SequencedMap<SupportedFilter, List<String>> valuesByFacet,
+                           Set<SupportedFilter> timedOut,
+                           Map<SupportedFilter, RuntimeException> failures) {
+
+    /**
+     * @return  true if the values of all the requested facets were loaded
+     */
+    public boolean complete(){
+        return timedOut.isEmpty() && failures.isEmpty();
+    }
+
+    /**
+     * @return  the values of the facet (empty if not loaded)
+     */
+    public List<String> valuesOf(SupportedFilter facet){
+        return valuesByFacet.getOrDefault(facet, List.of());
+    }
+}
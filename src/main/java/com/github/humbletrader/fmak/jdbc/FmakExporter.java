@@ -0,0 +1,100 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.query.ExportQuery;
+import com.github.humbletrader.fmak.query.FmakColumn;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * streams the rows of an export (see {@link com.github.humbletrader.fmak.query.FmakSqlBuilder#buildExportSql})
+ * to an output stream: the rows are fetched from a db cursor {@link FmakQueryExecutor#fetchSize()} at a time
+ * and written as soon as they are read, so the memory used does not depend on the size of the export.
+ *
+ * This class is thread safe (each export uses its own connection).
+ *
+ * @param executor  provides the data source and the fetch size
+ */
+public record FmakExporter(FmakQueryExecutor executor) {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param query the export statement
+     * @param format    the format of the rows
+     * @param out   where the rows are written (flushed but not closed at the end)
+     * @return  the number of rows exported
+     */
+    public long export(ExportQuery query, ExportFormat format, OutputStream out){
+        List<String> columnNames = new ArrayList<>(query.columns().size());
+        for(FmakColumn column : query.columns()){
+            columnNames.add(column.colName());
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        try(Connection connection = executor.dataSource().getConnection()){
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false); //postgres only fetches through a cursor inside a transaction
+            try(PreparedStatement statement = connection.prepareStatement(
+                    query.statement().getSqlWithoutParameters(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)){
+                statement.setFetchSize(executor.fetchSize());
+                query.statement().bindTo(statement);
+                long rows = 0;
+                format.writeHeader(writer, columnNames);
+                try(ResultSet resultSet = statement.executeQuery()){
+                    Object[] values = new Object[columnNames.size()];
+                    while(resultSet.next()){
+                        readRow(resultSet, query.columns(), values);
+                        format.writeRow(writer, columnNames, values);
+                        rows++;
+                    }
+                }
+                writer.flush();
+                return rows;
+            } finally {
+                connection.rollback(); //nothing was changed, just ends the read only transaction
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new FmakJdbcException("error exporting " + query.statement().getSqlWithoutParameters(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("error writing the export", e);
+        }
+    }
+
+    public long export(ExportQuery query, ExportFormat format, WritableByteChannel out){
+        return export(query, format, Channels.newOutputStream(out));
+    }
+
+    private static void readRow(ResultSet resultSet, List<FmakColumn> columns, Object[] values) throws SQLException {
+        for(int i = 0; i < values.length; i++){
+            int columnIndex = i + 1;
+            values[i] = switch (columns.get(i).sqlType()){
+                case VARCHAR_TYPE -> resultSet.getString(columnIndex);
+                case INT_TYPE -> {
+                    int value = resultSet.getInt(columnIndex);
+                    yield resultSet.wasNull() ? null : value;
+                }
+                case DOUBLE_TYPE -> {
+                    double value = resultSet.getDouble(columnIndex);
+                    yield resultSet.wasNull() ? null : value;
+                }
+                case BIGINT_TYPE -> {
+                    long value = resultSet.getLong(columnIndex);
+                    yield resultSet.wasNull() ? null : value;
+                }
+                case BOOLEAN_TYPE -> {
+                    boolean value = resultSet.getBoolean(columnIndex);
+                    yield resultSet.wasNull() ? null : value;
+                }
+            };
+        }
+    }
+}
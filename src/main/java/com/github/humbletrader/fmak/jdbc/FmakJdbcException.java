@@ -0,0 +1,16 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * unchecked wrapper of the sql exceptions thrown while executing the statements
+ * (needed because the results are streamed)
+ */
+public class FmakJdbcException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FmakJdbcException(String message, SQLException cause) {
+        super(message, cause);
+    }
+}
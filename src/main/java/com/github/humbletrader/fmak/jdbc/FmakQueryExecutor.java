@@ -0,0 +1,88 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.query.ParameterizedStatement;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * executes the statements built by {@link com.github.humbletrader.fmak.query.FmakSqlBuilder} against a data source.
+ * For several statements in a row (ie. a search and its facets) prefer {@link #openSession()}
+ * so that the connection and its prepared statements are reused. Each call of {@link #stream} / {@link #list}
+ * uses a new session, so across calls only the statement cache of the driver avoids preparing the statements again
+ * (see {@link FmakSession}).
+ *
+ * This class is thread safe (each call / session uses its own connection).
+ *
+ * @param dataSource    the data source (usually a connection pool)
+ * @param fetchSize the number of rows fetched from the db at once while streaming
+ * @param statementCacheSize    the maximum number of prepared statements kept by a session (during the session only)
+ */
+public record FmakQueryExecutor(DataSource dataSource, int fetchSize, int statementCacheSize) {
+
+    public static final int DEFAULT_FETCH_SIZE = 100;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+    public FmakQueryExecutor(DataSource dataSource){
+        this(dataSource, DEFAULT_FETCH_SIZE, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * @return  a session holding a connection of the data source (to be closed after use)
+     */
+    public FmakSession openSession(){
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new FmakJdbcException("cannot get a connection", e);
+        }
+        try {
+            return new FmakSession(connection, fetchSize, statementCacheSize);
+        } catch (SQLException e) {
+            try {
+                connection.close();
+            } catch (SQLException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw new FmakJdbcException("cannot start the read only transaction", e);
+        }
+    }
+
+    /**
+     * executes the statement in its own session and streams its rows.
+     * The returned stream must be closed to release the connection.
+     */
+    public <T> Stream<T> stream(ParameterizedStatement statement, RowMapper<T> mapper){
+        FmakSession session = openSession();
+        try {
+            return session.stream(statement, mapper).onClose(session::close);
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * executes the statement in its own session and collects all its rows
+     */
+    public <T> List<T> list(ParameterizedStatement statement, RowMapper<T> mapper){
+        try(FmakSession session = openSession()){
+            return session.list(statement, mapper);
+        }
+    }
+
+    /**
+     * executes the statement in its own session and collects all its rows.
+     * The statement is aborted by the db if it runs longer than the timeout
+     */
+    public <T> List<T> list(ParameterizedStatement statement, RowMapper<T> mapper, Duration timeout){
+        try(FmakSession session = openSession()){
+            return session.list(statement, mapper, timeout);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.query.ParameterizedStatement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * executes statements on a single connection, keeping its prepared statements (by sql) for reuse
+ * during the session. Since {@link com.github.humbletrader.fmak.query.FmakSqlBuilder} generates the same sql
+ * for the same query shape, the statements are prepared only once per shape in a session.
+ * The reuse across sessions (ie. across requests) is left to the statement cache of the driver, which is kept
+ * per physical connection (for postgres see the prepareThreshold and preparedStatementCacheQueries properties).
+ *
+ * The statements are executed in a read only transaction (autocommit off) which ends when the session is closed:
+ * postgres ignores the fetch size, and loads the whole result in memory, when autocommit is on.
+ *
+ * This class is not thread safe (as the jdbc connection it uses), except {@link #cancel()}.
+ */
+public class FmakSession implements AutoCloseable {
+
+    private final Connection connection;
+    private final int fetchSize;
+    private final Map<String, PreparedStatement> statementsBySql;
+    private final boolean previousAutoCommit;
+    private volatile Statement lastExecuted; //the statement to cancel
+
+    FmakSession(Connection connection, int fetchSize, int statementCacheSize) throws SQLException {
+        this.connection = connection;
+        this.previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        this.fetchSize = fetchSize;
+        this.statementsBySql = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if(size() > statementCacheSize){
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * executes the statement and streams its rows. The rows are read from the db while the stream is consumed
+     * (the driver fetches them in batches of fetchSize rows), nothing is materialized.
+     * The returned stream should be closed (ie. try-with-resources) to release the result set.
+     * Executing again the same sql in this session, before the stream is consumed, closes the stream
+     * (the prepared statement is reused).
+     */
+    public <T> Stream<T> stream(ParameterizedStatement statement, RowMapper<T> mapper){
+        ResultSet resultSet = executeQuery(statement, 0);
+        return StreamSupport.stream(new ResultSetSpliterator<>(resultSet, mapper), false)
+                .onClose(() -> closeQuietly(resultSet));
+    }
+
+    /**
+     * executes the statement and collects all its rows in a list
+     */
+    public <T> List<T> list(ParameterizedStatement statement, RowMapper<T> mapper){
+        try(Stream<T> rows = stream(statement, mapper)){
+            return rows.toList();
+        }
+    }
+
+    /**
+     * executes the statement and collects all its rows in a list. The db aborts the statement
+     * if it runs longer than the timeout (rounded up to seconds)
+     */
+    public <T> List<T> list(ParameterizedStatement statement, RowMapper<T> mapper, Duration timeout){
+        ResultSet resultSet = executeQuery(statement, timeoutSeconds(timeout));
+        try(Stream<T> rows = StreamSupport.stream(new ResultSetSpliterator<>(resultSet, mapper), false)
+                .onClose(() -> closeQuietly(resultSet))){
+            return rows.toList();
+        }
+    }
+
+    /**
+     * @return  the timeout in seconds for {@link Statement#setQueryTimeout(int)} (at least one second, zero means no timeout)
+     */
+    static int timeoutSeconds(Duration timeout){
+        long nanosPerSecond = Duration.ofSeconds(1).toNanos();
+        long seconds = (Math.max(0, timeout.toNanos()) + nanosPerSecond - 1) / nanosPerSecond;
+        return Math.clamp(seconds, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * asks the db to abort the statement executed last by this session (if still running).
+     * Unlike interrupting the thread waiting for the results, this releases the db resources
+     * and unblocks the socket read of the driver. It can be called from any thread.
+     */
+    public void cancel(){
+        Statement running = lastExecuted;
+        if(running != null){
+            try {
+                running.cancel();
+            } catch (SQLException ignored) {
+                //the statement already completed or was closed
+            }
+        }
+    }
+
+    private ResultSet executeQuery(ParameterizedStatement statement, int timeoutSeconds){
+        try {
+            PreparedStatement preparedStatement = prepare(statement.getSqlWithoutParameters());
+            statement.bindTo(preparedStatement);
+            preparedStatement.setQueryTimeout(timeoutSeconds); //reset for the cached statements
+            lastExecuted = preparedStatement;
+            return preparedStatement.executeQuery();
+        } catch (SQLException e) {
+            throw new FmakJdbcException("error executing " + statement, e);
+        }
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement result = statementsBySql.get(sql);
+        if(result == null || result.isClosed()){
+            result = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            result.setFetchSize(fetchSize);
+            statementsBySql.put(sql, result);
+        } else {
+            result.clearParameters();
+        }
+        return result;
+    }
+
+    /**
+     * @return  the number of prepared statements kept for reuse
+     */
+    public int cachedStatements(){
+        return statementsBySql.size();
+    }
+
+    public Connection connection(){
+        return connection;
+    }
+
+    /**
+     * closes the cached prepared statements, ends the transaction and closes the connection (returns it to the pool)
+     */
+    @Override
+    public void close() {
+        for(PreparedStatement statement : statementsBySql.values()){
+            closeQuietly(statement);
+        }
+        statementsBySql.clear();
+        try(connection) {
+            connection.rollback(); //nothing was changed, just ends the read only transaction
+            connection.setAutoCommit(previousAutoCommit);
+        } catch (SQLException e) {
+            throw new FmakJdbcException("error closing the connection", e);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable){
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            //nothing to do, the resource is released anyway
+        }
+    }
+
+    /**
+     * a forward only iterator over the rows of a result set
+     */
+    private static class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+        private final ResultSet resultSet;
+        private final RowMapper<T> mapper;
+
+        ResultSetSpliterator(ResultSet resultSet, RowMapper<T> mapper){
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.resultSet = resultSet;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                if(!resultSet.next()){
+                    return false;
+                }
+                action.accept(mapper.map(resultSet));
+                return true;
+            } catch (SQLException e) {
+                throw new FmakJdbcException("error reading the results", e);
+            }
+        }
+    }
+}
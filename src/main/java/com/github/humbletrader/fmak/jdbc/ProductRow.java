@@ -0,0 +1,45 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * a row returned by the grouped search ({@link com.github.humbletrader.fmak.query.FmakSqlBuilder#buildGroupedSearchSql}):
+ * one product with the sizes matching the criteria
+ *
+ * @param minPrice  the lowest price of the matching sizes
+ * @param sizes the matching sizes, cheapest first
+ */
+public record ProductRow(long productId,
+                         String brandNameVersion,
+                         String link,
+                         String condition,
+                         boolean visibleToPublic,
+                         double minPrice,
+                         List<String> sizes) {
+
+    public static final RowMapper<ProductRow> MAPPER = resultSet -> new ProductRow(
+            resultSet.getLong(1),
+            resultSet.getString(2),
+            resultSet.getString(3),
+            resultSet.getString(4),
+            resultSet.getBoolean(5),
+            resultSet.getDouble(6),
+            toStrings(resultSet.getArray(7))
+    );
+
+    private static List<String> toStrings(Array sqlArray) throws SQLException {
+        if(sqlArray == null){
+            return List.of();
+        }
+        Object[] elements = (Object[]) sqlArray.getArray();
+        List<String> result = new ArrayList<>(elements.length);
+        for(Object element : elements){
+            result.add(element == null ? null : element.toString());
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * converts the current row of a result set into an object
+ * @param <T>   the type of the object
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    T map(ResultSet resultSet) throws SQLException;
+
+    /**
+     * @return  a mapper for the statements selecting a single column (ie. distinct values)
+     */
+    static RowMapper<String> firstColumnAsString(){
+        return resultSet -> resultSet.getString(1);
+    }
+}
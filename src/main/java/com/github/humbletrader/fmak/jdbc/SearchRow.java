@@ -0,0 +1,54 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.query.SearchCursor;
+
+/**
+ * a row returned by the search statements of {@link com.github.humbletrader.fmak.query.FmakSqlBuilder}
+ *
+ * @param attributeId   the id of the product attribute (only selected by the keyset paginated search, otherwise null)
+ */
+public record SearchRow(String brandNameVersion,
+                        String link,
+                        double price,
+                        String size,
+                        String condition,
+                        boolean visibleToPublic,
+                        Long attributeId) {
+
+    /**
+     * mapper for the rows of the search paginated with page and offset
+     */
+    public static final RowMapper<SearchRow> MAPPER = resultSet -> new SearchRow(
+            resultSet.getString(1),
+            resultSet.getString(2),
+            resultSet.getDouble(3),
+            resultSet.getString(4),
+            resultSet.getString(5),
+            resultSet.getBoolean(6),
+            null
+    );
+
+    /**
+     * mapper for the rows of the keyset paginated search (the id of the attribute is the last column)
+     */
+    public static final RowMapper<SearchRow> KEYSET_MAPPER = resultSet -> new SearchRow(
+            resultSet.getString(1),
+            resultSet.getString(2),
+            resultSet.getDouble(3),
+            resultSet.getString(4),
+            resultSet.getString(5),
+            resultSet.getBoolean(6),
+            resultSet.getLong(7)
+    );
+
+    /**
+     * @return  the cursor for the page starting after this row
+     * @throws IllegalStateException if the row was not returned by a keyset paginated search
+     */
+    public SearchCursor cursor(){
+        if(attributeId == null){
+            throw new IllegalStateException("the attribute id is only available in keyset paginated searches");
+        }
+        return SearchCursor.of(price, attributeId);
+    }
+}
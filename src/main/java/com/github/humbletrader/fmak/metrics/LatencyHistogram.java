@@ -0,0 +1,77 @@
+package com.github.humbletrader.fmak.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a lock-free histogram of non negative values (ie. nanoseconds) with a bounded relative error:
+ * each power of two is split into {@value #SUB_BUCKETS} linear sub-buckets (like the HDR histograms)
+ * so a recorded value is reported with an error below 1 / {@value #SUB_BUCKETS}.
+ *
+ * This class is thread safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //values below SUB_BUCKETS have their own bucket, then SUB_BUCKETS buckets for each power of two up to 2^62
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long value){
+        counts.incrementAndGet(bucketOf(Math.max(value, 0)));
+    }
+
+    static int bucketOf(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return  the smallest value recorded in the given bucket
+     */
+    static long lowestValueOf(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @return  the highest value recorded in the given bucket
+     */
+    static long highestValueOf(int bucket){
+        return bucket + 1 < BUCKET_COUNT ? lowestValueOf(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param percentile    between 0 and 100
+     * @return  the highest value of the bucket containing the percentile (0 if nothing was recorded)
+     */
+    public long valueAtPercentile(double percentile){
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            seen += snapshot[i];
+            if(seen >= rank){
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKET_COUNT - 1);
+    }
+}
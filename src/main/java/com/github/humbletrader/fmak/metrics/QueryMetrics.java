@@ -0,0 +1,74 @@
+package com.github.humbletrader.fmak.metrics;
+
+import com.github.humbletrader.fmak.query.FmakTable;
+import com.github.humbletrader.fmak.query.QueryBuildEvent;
+import com.github.humbletrader.fmak.query.QueryBuildListener;
+import com.github.humbletrader.fmak.query.QueryShape;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * aggregates the statements built by a {@link com.github.humbletrader.fmak.query.FmakSqlBuilder}:
+ * counters (striped {@link LongAdder}s), a latency histogram and the number of calls per query shape.
+ * Use {@link #snapshot()} to read them.
+ *
+ * This class is thread safe and lock-free.
+ */
+public class QueryMetrics implements QueryBuildListener {
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder totalBuildNanos = new LongAdder();
+    private final LongAccumulator maxBuildNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalSqlLength = new LongAdder();
+    private final LongAdder totalParams = new LongAdder();
+    private final LongAdder shopsJoins = new LongAdder();
+    private final LongAdder attributesJoins = new LongAdder();
+    private final LongAdder attributesInExists = new LongAdder();
+    private final LatencyHistogram buildLatency = new LatencyHistogram();
+    private final ConcurrentHashMap<QueryShape, LongAdder> statementsByShape = new ConcurrentHashMap<>();
+
+    @Override
+    public void onStatementBuilt(QueryBuildEvent event) {
+        statements.increment();
+        totalBuildNanos.add(event.buildNanos());
+        maxBuildNanos.accumulate(event.buildNanos());
+        buildLatency.record(event.buildNanos());
+        totalSqlLength.add(event.sqlLength());
+        totalParams.add(event.paramCount());
+        if(event.joinedTables().contains(FmakTable.SHOPS)){
+            shopsJoins.increment();
+        }
+        if(event.joinedTables().contains(FmakTable.PRODUCT_ATTRIBUTES)){
+            attributesJoins.increment();
+        }
+        if(event.attributesInExists()){
+            attributesInExists.increment();
+        }
+        statementsByShape.computeIfAbsent(event.shape(), shape -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return  the current values (not an atomic view: statements built meanwhile may be partially counted)
+     */
+    public QueryMetricsSnapshot snapshot(){
+        Map<QueryShape, Long> byShape = new HashMap<>();
+        statementsByShape.forEach((shape, count) -> byShape.put(shape, count.sum()));
+        return new QueryMetricsSnapshot(
+                statements.sum(),
+                totalBuildNanos.sum(),
+                maxBuildNanos.get(),
+                buildLatency.valueAtPercentile(50),
+                buildLatency.valueAtPercentile(99),
+                totalSqlLength.sum(),
+                totalParams.sum(),
+                shopsJoins.sum(),
+                attributesJoins.sum(),
+                attributesInExists.sum(),
+                Map.copyOf(byShape)
+        );
+    }
+}
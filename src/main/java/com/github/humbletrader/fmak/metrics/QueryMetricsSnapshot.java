@@ -0,0 +1,53 @@
+package com.github.humbletrader.fmak.metrics;
+
+import com.github.humbletrader.fmak.query.QueryShape;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the values aggregated by {@link QueryMetrics} at a given moment
+ *
+ * @param statements    the number of statements built
+ * @param totalBuildNanos   the time spent building all the statements
+ * @param maxBuildNanos the longest build
+ * @param p50BuildNanos the median build time (approximated by the histogram)
+ * @param p99BuildNanos the 99th percentile of the build time (approximated by the histogram)
+ * @param totalSqlLength    the sum of the lengths of the sql
+ * @param totalParams   the sum of the number of parameters
+ * @param shopsJoins    the number of statements joining the shops
+ * @param attributesJoins   the number of statements joining the product attributes
+ * @param attributesInExists    the number of statements filtering the attributes in an "exists" sub-query
+ * @param statementsByShape the number of statements built for each query shape
+ */
+public record QueryMetricsSnapshot(long statements,
+                                   long totalBuildNanos,
+                                   long maxBuildNanos,
+                                   long p50BuildNanos,
+                                   long p99BuildNanos,
+                                   long totalSqlLength,
+                                   long totalParams,
+                                   long shopsJoins,
+                                   long attributesJoins,
+                                   long attributesInExists,
+                                   Map<QueryShape, Long> statementsByShape) {
+
+    public double meanBuildNanos(){
+        return statements == 0 ? 0 : (double) totalBuildNanos / statements;
+    }
+
+    public double meanSqlLength(){
+        return statements == 0 ? 0 : (double) totalSqlLength / statements;
+    }
+
+    /**
+     * @return  the most frequent query shapes, most frequent first
+     */
+    public List<Map.Entry<QueryShape, Long>> topShapes(int count){
+        return statementsByShape.entrySet().stream()
+                .sorted(Map.Entry.<QueryShape, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(count)
+                .toList();
+    }
+}
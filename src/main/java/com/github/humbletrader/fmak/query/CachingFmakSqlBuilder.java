@@ -0,0 +1,96 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.SequencedSet;
+
+/**
+ * a {@link FmakSqlBuilder} that renders the sql of each query shape (see {@link QueryShape}) only once.
+ * For the following requests having the same shape only the parameters are computed and bound
+ * to the cached sql string. Besides saving the rendering work, the identical sql strings
+ * help the jdbc driver / the db reuse their prepared statements.
+ * The listener of the delegate is notified for every statement, rendered or taken from the cache.
+ *
+ * This class is thread safe.
+ */
+public class CachingFmakSqlBuilder {
+
+    private final FmakSqlBuilder delegate;
+    private final Cache<QueryShape, String> sqlByShape;
+
+    /**
+     * @param delegate  the builder used to render the sql when the shape is not in the cache
+     * @param maximumSize   the maximum number of shapes kept in the cache (least recently used ones are evicted first)
+     * @param expireAfterAccess the shapes not used during this interval are evicted
+     */
+    public CachingFmakSqlBuilder(FmakSqlBuilder delegate, long maximumSize, Duration expireAfterAccess){
+        this.delegate = delegate;
+        this.sqlByShape = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+    }
+
+    public CachingFmakSqlBuilder(FmakSqlBuilder delegate, long maximumSize){
+        this(delegate, maximumSize, Duration.ofHours(1));
+    }
+
+    public ParameterizedStatement buildDistinctValuesSql(Map<String, SequencedSet<SearchValAndOp>> criteria,
+                                                         String column){
+        var filters = delegate.webFiltersToInternalFilters(criteria);
+        return buildDistinctValuesSql(filters, SupportedFilter.requireFilterFromName(column));
+    }
+
+    public ParameterizedStatement buildDistinctValuesSql(SequencedSet<FilterOpVal> criteria,
+                                                         SupportedFilter distinctColumn){
+        QueryShape shape = QueryShape.distinct(criteria, distinctColumn);
+        String cachedSql = sqlByShape.getIfPresent(shape);
+        if(cachedSql != null){
+            return delegate.buildDistinctValuesSql(cachedSql, criteria, distinctColumn);
+        }
+        ParameterizedStatement result = delegate.buildDistinctValuesSql(criteria, distinctColumn);
+        sqlByShape.put(shape, result.getSqlWithoutParameters());
+        return result;
+    }
+
+    public ParameterizedStatement buildSearchSqlForWebFilters(Map<String, SequencedSet<SearchValAndOp>> criteria, int page) {
+        var filters = delegate.webFiltersToInternalFilters(criteria);
+        return buildSearchSql(filters, page);
+    }
+
+    public ParameterizedStatement buildSearchSql(SequencedSet<FilterOpVal> criteria, int page) {
+        QueryShape shape = QueryShape.search(criteria);
+        String cachedSql = sqlByShape.getIfPresent(shape);
+        if(cachedSql != null){
+            return delegate.buildSearchSql(cachedSql, criteria, page);
+        }
+        ParameterizedStatement result = delegate.buildSearchSql(criteria, page);
+        sqlByShape.put(shape, result.getSqlWithoutParameters());
+        return result;
+    }
+
+    /**
+     * @return  hit / miss / eviction counters of the shape cache
+     */
+    public CacheStats stats(){
+        return sqlByShape.stats();
+    }
+
+    /**
+     * @return  the number of shapes currently cached
+     */
+    public long size(){
+        return sqlByShape.size();
+    }
+
+    public void invalidateAll(){
+        sqlByShape.invalidateAll();
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * a query template compiled by {@link QueryTemplate#compile(FmakSqlBuilder)}: the final sql and the position
+ * of the parameter of each slot. Binding the values (see {@link #bind()}) does not render any sql,
+ * all the statements share the same sql string.
+ *
+ * This class is immutable and thread safe (each {@link Binding} is used by a single request).
+ */
+public final class CompiledQuery {
+
+    /**
+     * a value expected at request time
+     * @param filter    the filter
+     * @param operator  the operator (for {@link SqlOperators#ANY} a list of values is bound)
+     */
+    public record Slot(SupportedFilter filter, SqlOperators operator) {
+    }
+
+    private final String sql;
+    private final Slot[] slots;     //in the order of the parameters
+    private final boolean paged;    //the limit and offset are bound after the slots
+    private final int rowsPerPage;
+
+    CompiledQuery(String sql, List<Slot> slots, boolean paged, int rowsPerPage){
+        this.sql = sql;
+        this.slots = slots.toArray(new Slot[0]);
+        this.paged = paged;
+        this.rowsPerPage = rowsPerPage;
+    }
+
+    public String sql(){
+        return sql;
+    }
+
+    public List<Slot> slots(){
+        return List.of(slots);
+    }
+
+    /**
+     * @return  a new binding of the values for one request
+     */
+    public Binding bind(){
+        return new Binding();
+    }
+
+    private int positionOf(SupportedFilter filter, SqlOperators operator){
+        for(int i = 0; i < slots.length; i++){
+            if(slots[i].filter() == filter && slots[i].operator() == operator){
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("no slot for filter " + filter.getNameInWebsite() + " and operator " + operator.getJsOperator());
+    }
+
+    /**
+     * the values of the slots for one request.
+     *
+     * This class is not thread safe.
+     */
+    public final class Binding {
+
+        private final Object[] values = new Object[slots.length];  //String or List<String> for 'any'
+        private int page;
+
+        private Binding(){
+        }
+
+        /**
+         * @throws IllegalArgumentException if there is no such slot or the value is not valid for the type of the column
+         */
+        public Binding set(SupportedFilter filter, SqlOperators operator, String value){
+            if(operator == SqlOperators.ANY){
+                return setAny(filter, Collections.singletonList(value)); //null is reported by the validation
+            }
+            int position = positionOf(filter, operator);
+            values[position] = requireValid(filter, value);
+            return this;
+        }
+
+        /**
+         * @param filterName    the name in website of the filter
+         * @param jsOperator    the operator as received from the web
+         */
+        public Binding set(String filterName, String jsOperator, String value){
+            return set(SupportedFilter.requireFilterFromName(filterName), SqlOperators.forJs(jsOperator), value);
+        }
+
+        /**
+         * binds the values of the 'any' slot of the filter
+         */
+        public Binding setAny(SupportedFilter filter, List<String> anyValues){
+            if(anyValues.isEmpty()){
+                throw new IllegalArgumentException("no value for the any slot of filter " + filter.getNameInWebsite());
+            }
+            int position = positionOf(filter, SqlOperators.ANY);
+            for(String value : anyValues){
+                requireValid(filter, value);
+            }
+            values[position] = List.copyOf(anyValues);
+            return this;
+        }
+
+        private static String requireValid(SupportedFilter filter, String value){
+            SqlType sqlType = filter.getColumn().sqlType();
+            boolean valid;
+            try {
+                valid = value != null && (sqlType != SqlType.BOOLEAN_TYPE || value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"));
+                if(valid){
+                    ParamStmtBuilder.castParam(value, sqlType);
+                }
+            } catch (NumberFormatException e) {
+                valid = false;
+            }
+            if(!valid){
+                throw new IllegalArgumentException("invalid value " + value + " for filter " + filter.getNameInWebsite() + " of type " + sqlType);
+            }
+            return value;
+        }
+
+        /**
+         * @param page  the requested page (only for search templates)
+         */
+        public Binding page(int page){
+            if(!paged){
+                throw new IllegalStateException("the query is not paged");
+            }
+            this.page = page;
+            return this;
+        }
+
+        /**
+         * @return  the statement (the sql of the compiled query and the bound values)
+         * @throws IllegalStateException if a slot is not bound
+         */
+        @SuppressWarnings("unchecked")
+        public ParameterizedStatement build(){
+            ParamValues params = new ParamValues(slots.length + 2);
+            for(int i = 0; i < slots.length; i++){
+                if(values[i] == null){
+                    throw new IllegalStateException("no value bound to filter " + slots[i].filter().getNameInWebsite()
+                            + " and operator " + slots[i].operator().getJsOperator());
+                }
+                SqlType sqlType = slots[i].filter().getColumn().sqlType();
+                if(slots[i].operator() == SqlOperators.ANY){
+                    params.addArray(ParamStmtBuilder.castArrayParam((List<String>) values[i], sqlType));
+                } else {
+                    params.add((String) values[i], sqlType);
+                }
+            }
+            if(paged){
+                params.add(rowsPerPage + 1).add(page * rowsPerPage);
+            }
+            return new ParameterizedStatement(sql, params);
+        }
+    }
+}
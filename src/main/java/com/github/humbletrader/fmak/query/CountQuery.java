@@ -0,0 +1,51 @@
+package com.github.humbletrader.fmak.query;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * a statement counting (or estimating) the number of search results and the parser of its single value
+ *
+ * @param statement the statement returning a single row with a single column
+ * @param mode  how the count is computed
+ * @param cap   the maximum count computed exactly (only for {@link Mode#CAPPED})
+ */
+public record CountQuery(ParameterizedStatement statement, Mode mode, int cap) {
+
+    public enum Mode {
+        /**
+         * count(*) over the first cap + 1 rows
+         */
+        CAPPED,
+        /**
+         * the number of rows estimated by the planner ("explain (format json)")
+         */
+        ESTIMATE
+    }
+
+    //the top node of the plan comes first in the json
+    private static final Pattern PLAN_ROWS = Pattern.compile("\"Plan Rows\"\\s*:\\s*(\\d+)");
+
+    /**
+     * @param value the value returned by the statement (the count or the json plan)
+     * @return  the count of the search results
+     */
+    public TotalCount parse(String value){
+        if(value == null){
+            throw new IllegalArgumentException("the count statement returned no value");
+        }
+        return switch (mode){
+            case CAPPED -> {
+                long count = Long.parseLong(value.trim());
+                yield count > cap ? new TotalCount(cap, TotalCount.Precision.AT_LEAST) : new TotalCount(count, TotalCount.Precision.EXACT);
+            }
+            case ESTIMATE -> {
+                Matcher matcher = PLAN_ROWS.matcher(value);
+                if(!matcher.find()){
+                    throw new IllegalArgumentException("no row estimate found in the plan " + value);
+                }
+                yield new TotalCount(Long.parseLong(matcher.group(1)), TotalCount.Precision.ESTIMATE);
+            }
+        };
+    }
+}
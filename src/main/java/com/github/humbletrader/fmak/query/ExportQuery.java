@@ -0,0 +1,12 @@
+package com.github.humbletrader.fmak.query;
+
+import java.util.List;
+
+/**
+ * a statement exporting search results and the columns it selects (in order)
+ *
+ * @param statement the statement
+ * @param columns   the selected columns
+ */
+public record ExportQuery(ParameterizedStatement statement, List<FmakColumn> columns) {
+}
@@ -0,0 +1,16 @@
+package com.github.humbletrader.fmak.query;
+
+/**
+ * the order of the rows in a 'distinct values with counts' statement
+ */
+public enum FacetCountOrder {
+    /**
+     * ascending by value
+     */
+    VALUE,
+
+    /**
+     * descending by count (the most frequent values first), then ascending by value
+     */
+    COUNT
+}
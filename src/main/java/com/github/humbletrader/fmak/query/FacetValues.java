@@ -0,0 +1,66 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+
+import java.util.*;
+
+/**
+ * splits the rows returned by the statement built with
+ * {@link FmakSqlBuilder#buildFacetValuesSql(SequencedSet, SequencedSet)} into the distinct values of each facet.
+ * The values of each facet are sorted in java according to the sql type of the column (see {@link SqlType#valueOrder()}),
+ * nulls last. Numbers and booleans come in the same order as {@link FmakSqlBuilder#buildDistinctValuesSql(SequencedSet, SupportedFilter)}
+ * but texts are compared char by char (like the "C" collation) so they may be ordered differently
+ * than by a database using a linguistic collation.
+ *
+ * This class is not thread safe.
+ */
+public class FacetValues {
+
+    private final SequencedMap<SupportedFilter, List<String>> valuesByFacet = new LinkedHashMap<>();
+
+    /**
+     * @param facets    the facets requested in the statement (they will be present in the result even without values)
+     */
+    public FacetValues(SequencedSet<SupportedFilter> facets){
+        for(SupportedFilter facet : facets){
+            valuesByFacet.put(facet, new ArrayList<>());
+        }
+    }
+
+    /**
+     * adds one row of the result
+     * @param facet the first column of the row (the name in website of the facet)
+     * @param value the second column of the row
+     */
+    public FacetValues add(String facet, String value){
+        List<String> values = valuesByFacet.get(SupportedFilter.filterFromName(facet));
+        if(values == null){
+            throw new IllegalArgumentException("facet not requested: " + facet);
+        }
+        values.add(value);
+        return this;
+    }
+
+    /**
+     * @return  the sorted values of the given facet
+     */
+    public List<String> valuesOf(SupportedFilter facet){
+        List<String> values = valuesByFacet.get(facet);
+        if(values == null){
+            throw new IllegalArgumentException("facet not requested: " + facet);
+        }
+        values.sort(Comparator.nullsLast(facet.getColumn().sqlType().valueOrder()));
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @return  the sorted values of each facet (in the order the facets were requested)
+     */
+    public SequencedMap<SupportedFilter, List<String>> asMap(){
+        SequencedMap<SupportedFilter, List<String>> result = new LinkedHashMap<>();
+        for(SupportedFilter facet : valuesByFacet.keySet()){
+            result.put(facet, valuesOf(facet));
+        }
+        return result;
+    }
+}
@@ -2,50 +2,331 @@ package com.github.humbletrader.fmak.query;
 
 import com.github.humbletrader.fmak.criteria.FilterOpVal;
 import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.stats.ColumnStatistics;
 import com.github.humbletrader.fmak.tables.ProductTable;
-import com.google.common.collect.Streams;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.SequencedSet;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 
 /**
  *  CONVENTION: the resulting sql is lower case
+ *
+ * @param rowsPerPage   the number of rows in a page of search results
+ * @param statistics    the statistics used to order the conditions
+ * @param listener  notified after each statement is built ({@link QueryBuildListener#NOOP} by default)
+ * @param rollup    the rollup table answering the distinct values queries it covers (null if there is no rollup)
  */
-public record FmakSqlBuilder(int rowsPerPage){
+public record FmakSqlBuilder(int rowsPerPage, ColumnStatistics statistics, QueryBuildListener listener, RollupDefinition rollup){
+
+    //initial capacities of the sql buffer: the fixed part of a statement and each condition in the where clause
+    private static final int STATEMENT_SQL_CAPACITY = 256;
+    private static final int CONDITION_SQL_CAPACITY = 32;
+
+    public FmakSqlBuilder(int rowsPerPage){
+        this(rowsPerPage, ColumnStatistics.fromPriorities());
+    }
+
+    public FmakSqlBuilder(int rowsPerPage, ColumnStatistics statistics){
+        this(rowsPerPage, statistics, QueryBuildListener.NOOP);
+    }
+
+    public FmakSqlBuilder(int rowsPerPage, ColumnStatistics statistics, QueryBuildListener listener){
+        this(rowsPerPage, statistics, listener, null);
+    }
+
+    /**
+     * @return  a builder routing the distinct values queries covered by the rollup to it
+     */
+    public FmakSqlBuilder withRollup(RollupDefinition rollup){
+        return new FmakSqlBuilder(rowsPerPage, statistics, listener, rollup);
+    }
 
     public ParameterizedStatement buildDistinctValuesSql(Map<String, SequencedSet<SearchValAndOp>> criteria,
                                                          String column){
         var filters = webFiltersToInternalFilters(criteria);
-        return buildDistinctValuesSql(filters, SupportedFilter.filterFromName(column));
+        return buildDistinctValuesSql(filters, SupportedFilter.requireFilterFromName(column));
     }
 
     /**
-     * builds the sql for 'distinct values call"
+     * builds the sql for 'distinct values call".
+     * When the builder has a rollup covering the criteria and the distinct column the statement reads the rollup
+     * instead of joining the base tables.
      * @param criteria the criteria for the search
      * @param distinctColumn    the column for which we check the distinct values
      * @return  the sql statement to be executed in order to get the distinct values from db
      */
     public ParameterizedStatement buildDistinctValuesSql(SequencedSet<FilterOpVal> criteria,
                                                          SupportedFilter distinctColumn){
-        ParamStmtBuilder selectStatement = new ParamStmtBuilder()
-                .append("select distinct")
-                .append(" ").append(distinctColumn.getColumn().prefixedColumnName())
-                .append(" from products p")
-                .append(" inner join shops s on s.id = p.shop_id");
+        long startNanos = startTiming();
+        ParameterizedStatement result = renderDistinctValues(newStatementBuilder(criteria, 0), criteria, distinctColumn).build();
+        if(listener != QueryBuildListener.NOOP){
+            reportDistinctValues(startNanos, result, criteria, distinctColumn);
+        }
+        return result;
+    }
 
-        if(FmakTable.PRODUCT_ATTRIBUTES == distinctColumn.getColumn().table() ||
-                criteria.stream().anyMatch(filterOperatorValues -> filterOperatorValues.filter().getColumn().table().equals(FmakTable.PRODUCT_ATTRIBUTES))){
-            selectStatement.append(" inner join product_attributes a on p.id = a.product_id");
+    private void reportDistinctValues(long startNanos, ParameterizedStatement result,
+                                      SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        if(routedToRollup(criteria, distinctColumn)){
+            report(startNanos, result, QueryShape.distinct(criteria, distinctColumn), EnumSet.noneOf(FmakTable.class), false);
+        } else {
+            report(startNanos, result, QueryShape.distinct(criteria, distinctColumn),
+                    distinctJoins(criteria, distinctColumn), filtersAttributesWithExists(criteria, distinctColumn));
         }
+    }
+
+    private ParamStmtBuilder renderDistinctValues(ParamStmtBuilder selectStatement,
+                                                  SequencedSet<FilterOpVal> criteria,
+                                                  SupportedFilter distinctColumn){
+        if(routedToRollup(criteria, distinctColumn)){
+            return renderRollupDistinctValues(selectStatement, criteria, distinctColumn);
+        }
+        selectStatement.append("select distinct")
+                .append(" ").append(distinctColumn.getColumn().prefixedColumnName());
+        appendFromAndWhereForDistinct(selectStatement, criteria, distinctColumn);
+        selectStatement.append(" order by ").append(distinctColumn.getColumn().prefixedColumnName());
+        return selectStatement;
+    }
+
+    private boolean routedToRollup(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        return rollup != null && rollup.covers(criteria, distinctColumn);
+    }
+
+    /**
+     * same as {@link #renderDistinctValues} but reading the rollup (all the columns are in a single table)
+     */
+    private ParamStmtBuilder renderRollupDistinctValues(ParamStmtBuilder selectStatement,
+                                                        SequencedSet<FilterOpVal> criteria,
+                                                        SupportedFilter distinctColumn){
+        String column = rollup.columnFor(distinctColumn).prefixedColumnName();
+        selectStatement.append("select distinct ").append(column)
+                .append(" from ").append(FmakTable.FACET_ROLLUP.tableName()).append(" ").append(FmakTable.FACET_ROLLUP.prefix());
+        String before = " where ";
+        for(FilterOpVal filterOpVal : criteria){
+            before = appendFilterConditions(selectStatement, rollup.columnFor(filterOpVal.filter()), filterOpVal, before);
+        }
+        appendForbiddenValues(selectStatement, distinctColumn.getColumn(), before);
+        selectStatement.append(" order by ").append(column);
+        return selectStatement;
+    }
 
-        selectStatement
-                .append(whereFromCriteria(criteria))
-                .append(avoidForbiddenValues(distinctColumn.getColumn()))
-                .append(" order by ").append(distinctColumn.getColumn().prefixedColumnName());
-        return selectStatement.build();
+    public ParameterizedStatement buildDistinctValuesWithCountSql(Map<String, SequencedSet<SearchValAndOp>> criteria,
+                                                                  String column,
+                                                                  FacetCountOrder order,
+                                                                  int limit){
+        var filters = webFiltersToInternalFilters(criteria);
+        return buildDistinctValuesWithCountSql(filters, SupportedFilter.requireFilterFromName(column), order, limit);
+    }
+
+    /**
+     * builds the sql for 'distinct values with counts' call: each row contains a distinct value of the column
+     * and the number of products (matching the criteria) having that value
+     * @param criteria the criteria for the search
+     * @param distinctColumn    the column for which we count the distinct values
+     * @param order how the values are ordered
+     * @param limit the maximum number of values returned (zero or negative for all values)
+     * @return  the sql statement to be executed in order to get the distinct values and their counts
+     */
+    public ParameterizedStatement buildDistinctValuesWithCountSql(SequencedSet<FilterOpVal> criteria,
+                                                                  SupportedFilter distinctColumn,
+                                                                  FacetCountOrder order,
+                                                                  int limit){
+        long startNanos = startTiming();
+        String column = distinctColumn.getColumn().prefixedColumnName();
+        ParamStmtBuilder selectStatement = newStatementBuilder(criteria, 1)
+                .append("select ").append(column)
+                //when the attributes are joined a product appears once per attribute row
+                .append(needsProductAttributesJoin(distinctColumn) ? ", count(distinct p.id) as cnt" : ", count(*) as cnt");
+        appendFromAndWhereForDistinct(selectStatement, criteria, distinctColumn);
+        selectStatement.append(" group by ").append(column);
+        switch (order){
+            case VALUE -> selectStatement.append(" order by ").append(column);
+            case COUNT -> selectStatement.append(" order by cnt desc, ").append(column);
+        }
+        if(limit > 0){
+            selectStatement.append(" limit ?", limit);
+        }
+        ParameterizedStatement result = selectStatement.build();
+        if(listener != QueryBuildListener.NOOP){
+            report(startNanos, result, QueryShape.of(QueryShape.Kind.DISTINCT_WITH_COUNT, criteria, distinctColumn),
+                    distinctJoins(criteria, distinctColumn), filtersAttributesWithExists(criteria, distinctColumn));
+        }
+        return result;
+    }
+
+    /**
+     * builds a single statement returning the distinct values of several columns (facets) for the same criteria.
+     * Each row of the result has two columns: the facet (the name in website of the filter) and the value
+     * (as varchar). The rows are not sorted, use {@link FacetValues} to split them per facet.
+     * @param criteria  the criteria for the search
+     * @param facets    the columns for which we check the distinct values
+     * @return  the sql statement to be executed in order to get the distinct values of all facets
+     */
+    public ParameterizedStatement buildFacetValuesSql(SequencedSet<FilterOpVal> criteria,
+                                                      SequencedSet<SupportedFilter> facets){
+        if(facets.isEmpty()){
+            throw new IllegalArgumentException("at least one facet is needed");
+        }
+        long startNanos = startTiming();
+        ParamStmtBuilder selectStatement = newStatementBuilder(criteria, 0, facets.size());
+        String before = "";
+        for(SupportedFilter facet : facets){
+            String facetColumn = facet.getColumn().prefixedColumnName();
+            selectStatement.append(before)
+                    .append("select '").append(facet.getNameInWebsite()).append("' as facet")
+                    .append(", cast(").append(facetColumn).append(" as varchar) as facet_value");
+            appendFromAndWhereForDistinct(selectStatement, criteria, facet);
+            selectStatement.append(" group by ").append(facetColumn);
+            before = " union all ";
+        }
+        ParameterizedStatement result = selectStatement.build();
+        if(listener != QueryBuildListener.NOOP){
+            Set<FmakTable> joinedTables = EnumSet.noneOf(FmakTable.class);
+            boolean attributesInExists = false;
+            for(SupportedFilter facet : facets){
+                joinedTables.addAll(distinctJoins(criteria, facet));
+                attributesInExists |= filtersAttributesWithExists(criteria, facet);
+            }
+            report(startNanos, result, QueryShape.of(QueryShape.Kind.FACETS, criteria, null), joinedTables, attributesInExists);
+        }
+        return result;
+    }
+
+    public ParameterizedStatement buildFacetValuesSql(Map<String, SequencedSet<SearchValAndOp>> criteria,
+                                                      SequencedSet<SupportedFilter> facets){
+        return buildFacetValuesSql(webFiltersToInternalFilters(criteria), facets);
+    }
+
+    public ParameterizedStatement buildAutocompleteSql(Map<String, SequencedSet<SearchValAndOp>> criteria,
+                                                       String column,
+                                                       String prefix,
+                                                       int limit){
+        var filters = webFiltersToInternalFilters(criteria);
+        return buildAutocompleteSql(filters, SupportedFilter.requireFilterFromName(column), prefix, limit);
+    }
+
+    /**
+     * builds the sql for the autocomplete of a text column: the first distinct values (matching the criteria)
+     * starting with the prefix, ignoring the case. The prefix is searched as a range
+     * (lower(column) collate "C" &gt;= prefix and lower(column) collate "C" &lt; next prefix) so that an index
+     * on the same expression (see {@link #autocompleteExpression(String)}) is scanned only for the matching values.
+     * The "C" collation compares the code points, the only order in which the range holds exactly the strings starting with the prefix.
+     * The values are made distinct and ordered by the same expression (the case variants of a value are one suggestion)
+     * so that the index also returns them in order and the scan stops at the limit.
+     * @param criteria  the criteria of the search
+     * @param column    the autocompleted column (should be a varchar)
+     * @param prefix    the text typed by the user (an empty prefix matches all the values)
+     * @param limit the maximum number of suggestions
+     * @return  the sql returning the suggestions, in code point order of their lower case
+     */
+    public ParameterizedStatement buildAutocompleteSql(SequencedSet<FilterOpVal> criteria,
+                                                       SupportedFilter column,
+                                                       String prefix,
+                                                       int limit){
+        if(column.getColumn().sqlType() != SqlType.VARCHAR_TYPE){
+            throw new IllegalArgumentException("only text columns can be autocompleted but " + column.getNameInWebsite() + " is " + column.getColumn().sqlType());
+        }
+        if(prefix == null){
+            throw new IllegalArgumentException("the prefix is mandatory");
+        }
+        if(limit <= 0){
+            throw new IllegalArgumentException("the number of suggestions should be positive but was " + limit);
+        }
+        long startNanos = startTiming();
+        String columnName = column.getColumn().prefixedColumnName();
+        String expression = autocompleteExpression(columnName);
+        ParamStmtBuilder selectStatement = newStatementBuilder(criteria, 3)
+                .append("select distinct on (").append(expression).append(") ").append(columnName);
+        appendFromForDistinct(selectStatement, criteria, column);
+        boolean attributesInExists = filtersAttributesWithExists(criteria, column);
+        selectStatement.append(appendWhere(selectStatement, criteria, attributesInExists));
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        if(lowerPrefix.isEmpty()){
+            selectStatement.append(columnName).append(" is not null");
+        } else {
+            selectStatement.append(expression).append(" >= ?", lowerPrefix);
+            String upperBound = prefixUpperBound(lowerPrefix);
+            if(upperBound != null){
+                selectStatement.append(" and ").append(expression).append(" < ?", upperBound);
+            }
+        }
+        appendForbiddenValues(selectStatement, column.getColumn(), " and ");
+        selectStatement.append(" order by ").append(expression).append(", ").append(columnName)
+                .append(" limit ?", limit);
+        ParameterizedStatement result = selectStatement.build();
+        if(listener != QueryBuildListener.NOOP){
+            report(startNanos, result, QueryShape.of(QueryShape.Kind.AUTOCOMPLETE, criteria, column),
+                    distinctJoins(criteria, column), attributesInExists);
+        }
+        return result;
+    }
+
+    /**
+     * @param column    the (prefixed or not) name of a text column
+     * @return  the expression compared with the prefix by {@link #buildAutocompleteSql(SequencedSet, SupportedFilter, String, int)}
+     */
+    public static String autocompleteExpression(String column){
+        return "lower(" + column + ") collate \"C\"";
+    }
+
+    /**
+     * @return  the smallest string greater (in code point order) than all the strings starting with the prefix
+     *          (null if there is none, ie. the prefix is made only of the last unicode code point)
+     */
+    static String prefixUpperBound(String prefix){
+        int end = prefix.length();
+        while(end > 0){
+            int last = prefix.codePointBefore(end);
+            int lastStart = end - Character.charCount(last);
+            int next = last + 1 == Character.MIN_SURROGATE ? Character.MAX_SURROGATE + 1 : last + 1; //surrogates are not code points
+            if(next <= Character.MAX_CODE_POINT){
+                return new StringBuilder(lastStart + 2).append(prefix, 0, lastStart).appendCodePoint(next).toString();
+            }
+            end = lastStart;
+        }
+        return null;
+    }
+
+    /**
+     * renders the "from ... where ..." part of a statement looking for the distinct values of a column.
+     * The shops are joined only when a shop column is used. The product attributes are joined only when
+     * the distinct column is an attribute, otherwise the attribute filters are checked with an "exists" sub-query
+     * (a semi-join) so that a product is not multiplied by the number of its attributes before the distinct.
+     */
+    private void appendFromAndWhereForDistinct(ParamStmtBuilder statement,
+                                               SequencedSet<FilterOpVal> criteria,
+                                               SupportedFilter distinctColumn){
+        appendFromForDistinct(statement, criteria, distinctColumn);
+        String before = appendWhere(statement, criteria, filtersAttributesWithExists(criteria, distinctColumn));
+        appendForbiddenValues(statement, distinctColumn.getColumn(), before);
+    }
+
+    private void appendFromForDistinct(ParamStmtBuilder statement,
+                                       SequencedSet<FilterOpVal> criteria,
+                                       SupportedFilter distinctColumn){
+        statement.append(" from products p");
+        if(FmakTable.SHOPS == distinctColumn.getColumn().table() || hasFilterOnTable(criteria, FmakTable.SHOPS)){
+            statement.append(" inner join shops s on s.id = p.shop_id");
+        }
+        if(needsProductAttributesJoin(distinctColumn)){
+            statement.append(" inner join product_attributes a on p.id = a.product_id");
+        }
+    }
+
+    private static boolean needsProductAttributesJoin(SupportedFilter distinctColumn){
+        return FmakTable.PRODUCT_ATTRIBUTES == distinctColumn.getColumn().table();
+    }
+
+    static boolean filtersAttributesWithExists(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        return !needsProductAttributesJoin(distinctColumn) && hasFilterOnTable(criteria, FmakTable.PRODUCT_ATTRIBUTES);
     }
 
     public ParameterizedStatement buildSearchSqlForWebFilters(Map<String, SequencedSet<SearchValAndOp>> criteria, int page) {
@@ -61,82 +342,467 @@ public record FmakSqlBuilder(int rowsPerPage){
      * @return  the sql to be executed against the db
      */
     public ParameterizedStatement buildSearchSql(SequencedSet<FilterOpVal> criteria, int page) {
-        //"brand_name_version", "link", "price", "size"
-        ParamStmtBuilder select = new ParamStmtBuilder()
-                .append("select")
-                .append(" p.brand_name_version, p.link, a.price, a.size, p.condition, p.visible_to_public")
-                .append(" from products p")
-                .append(" inner join shops s on s.id = p.shop_id")
-                .append(" inner join product_attributes a on p.id = a.product_id")
-                .append(whereFromCriteria(criteria))
-                .append(" order by a.price limit ?", rowsPerPage+1) //request one more row to detect if there is a next page available
+        return buildSearchSql(criteria, Projection.SEARCH_ROW, page);
+    }
+
+    public ParameterizedStatement buildSearchSqlForWebFilters(Map<String, SequencedSet<SearchValAndOp>> criteria,
+                                                              Projection projection,
+                                                              int page) {
+        var filters = webFiltersToInternalFilters(criteria);
+        return buildSearchSql(filters, projection, page);
+    }
+
+    /**
+     * builds the sql statement to retrieve only the given columns of the db items matching the criteria.
+     * A table is joined only if it has selected columns or filters, except the product attributes
+     * which are joined only for selected columns (their filters are otherwise checked with an "exists" sub-query).
+     * So when no attribute is selected the rows are products (ordered by id), otherwise product attributes
+     * ordered by price, or, when the projection has aggregates, products ordered by their minimum price (and id).
+     * @param criteria  the criteria (ie. brand=DUOTONE, etc)
+     * @param projection    the selected columns
+     * @param page  the new page requested
+     * @return  the sql to be executed against the db
+     */
+    public ParameterizedStatement buildSearchSql(SequencedSet<FilterOpVal> criteria, Projection projection, int page) {
+        long startNanos = startTiming();
+        ParameterizedStatement result = renderSearch(newStatementBuilder(criteria, 2), criteria, projection, page).build();
+        if(listener != QueryBuildListener.NOOP){
+            reportSearch(startNanos, result, criteria, projection);
+        }
+        return result;
+    }
+
+    private void reportSearch(long startNanos, ParameterizedStatement result,
+                              SequencedSet<FilterOpVal> criteria, Projection projection){
+        Set<FmakTable> joinedTables = EnumSet.noneOf(FmakTable.class);
+        if(joinsShops(criteria, projection)){
+            joinedTables.add(FmakTable.SHOPS);
+        }
+        boolean attributesJoined = projection.uses(FmakTable.PRODUCT_ATTRIBUTES);
+        if(attributesJoined){
+            joinedTables.add(FmakTable.PRODUCT_ATTRIBUTES);
+        }
+        report(startNanos, result, QueryShape.search(criteria, projection), joinedTables,
+                !attributesJoined && hasFilterOnTable(criteria, FmakTable.PRODUCT_ATTRIBUTES));
+    }
+
+    public ParameterizedStatement buildGroupedSearchSqlForWebFilters(Map<String, SequencedSet<SearchValAndOp>> criteria, int page) {
+        var filters = webFiltersToInternalFilters(criteria);
+        return buildGroupedSearchSql(filters, page);
+    }
+
+    /**
+     * builds the sql statement retrieving one row per product (instead of one per product attribute):
+     * the product, its minimum price and the sizes matching the criteria (ordered by price) in an array.
+     * The products are ordered by their minimum price and a page contains rowsPerPage products.
+     * The columns are the ones of {@link Projection#PRODUCT_ROW}.
+     * @param criteria  the criteria (ie. brand=DUOTONE, etc)
+     * @param page  the new page requested
+     * @return  the sql to be executed against the db
+     */
+    public ParameterizedStatement buildGroupedSearchSql(SequencedSet<FilterOpVal> criteria, int page) {
+        return buildSearchSql(criteria, Projection.PRODUCT_ROW, page);
+    }
+
+    private ParamStmtBuilder renderSearch(ParamStmtBuilder select, SequencedSet<FilterOpVal> criteria, Projection projection, int page) {
+        select.append("select");
+        String before = " ";
+        for(Projection.Item item : projection.items()){
+            select.append(before).append(item.render());
+            before = ", ";
+        }
+
+        boolean attributesJoined = projection.uses(FmakTable.PRODUCT_ATTRIBUTES);
+        select.append(" from products p");
+        if(joinsShops(criteria, projection)){
+            select.append(" inner join shops s on s.id = p.shop_id");
+        }
+        if(attributesJoined){
+            select.append(" inner join product_attributes a on p.id = a.product_id");
+        }
+        appendWhere(select, criteria, !attributesJoined && hasFilterOnTable(criteria, FmakTable.PRODUCT_ATTRIBUTES));
+
+        if(projection.hasAggregates()){
+            select.append(" group by p.id");
+            for(Projection.Item item : projection.items()){
+                if(item.aggregate() == Projection.Aggregate.NONE && item.column() != ProductTable.id){
+                    select.append(", ").append(item.column().prefixedColumnName());
+                }
+            }
+        }
+        if(!attributesJoined){
+            select.append(" order by p.id");
+        } else if(projection.hasAggregates()){
+            select.append(" order by min(a.price), p.id");
+        } else {
+            select.append(" order by a.price");
+        }
+        select.append(" limit ?", rowsPerPage+1) //request one more row to detect if there is a next page available
                 .append(" offset ?",page * rowsPerPage );
-        return select.build();
+        return select;
+    }
+
+    private static boolean joinsShops(SequencedSet<FilterOpVal> criteria, Projection projection){
+        return projection.uses(FmakTable.SHOPS) || hasFilterOnTable(criteria, FmakTable.SHOPS);
+    }
+
+    private void appendFromForSearch(ParamStmtBuilder select, SequencedSet<FilterOpVal> criteria){
+        select.append(" from products p");
+        if(hasFilterOnTable(criteria, FmakTable.SHOPS)){
+            select.append(" inner join shops s on s.id = p.shop_id");
+        }
+        select.append(" inner join product_attributes a on p.id = a.product_id");
+    }
+
+    public ParameterizedStatement buildSearchSqlForWebFilters(Map<String, SequencedSet<SearchValAndOp>> criteria, SearchCursor after) {
+        var filters = webFiltersToInternalFilters(criteria);
+        return buildSearchSql(filters, after);
     }
 
     /**
-     * builds the where clause of the sql for the given criteria
-     * @param criteria  the criteria
-     * @return  a part of sql with the "where" clause
+     * builds the sql statement to retrieve the db items for the given criteria using keyset (seek) pagination:
+     * instead of skipping the previous pages (offset) the statement starts right after the last row seen,
+     * so the cost of a page does not depend on how deep it is.
+     * The last column of each row is the id of the product attribute, needed (together with the price)
+     * to create the cursor of the next page (see {@link SearchCursor#of(double, long)})
+     * @param criteria  the criteria (ie. brand=DUOTONE, etc)
+     * @param after the cursor of the last row of the previous page (null for the first page)
+     * @return  the sql to be executed against the db
      */
-    private ParamStmtBuilder whereFromCriteria(SequencedSet<FilterOpVal> criteria){
-        ParamStmtBuilder result = new ParamStmtBuilder();
-        result.append(" where");
+    public ParameterizedStatement buildSearchSql(SequencedSet<FilterOpVal> criteria, SearchCursor after) {
+        long startNanos = startTiming();
+        ParamStmtBuilder select = newStatementBuilder(criteria, 3)
+                .append("select");
+        String columnSeparator = " ";
+        for(Projection.Item item : Projection.KEYSET_ROW.items()){
+            select.append(columnSeparator).append(item.render());
+            columnSeparator = ", ";
+        }
+        appendFromForSearch(select, criteria);
+        String before = appendWhere(select, criteria, false);
+        if(after != null){
+            select.append(before)
+                    .append("(a.price, a.id) > (?", after.price())
+                    .append(", ?)", after.attributeId());
+        }
+        select.append(" order by a.price, a.id limit ?", rowsPerPage+1); //request one more row to detect if there is a next page available
+        ParameterizedStatement result = select.build();
+        if(listener != QueryBuildListener.NOOP){
+            report(startNanos, result, QueryShape.of(QueryShape.Kind.KEYSET_SEARCH, criteria, null), searchJoins(criteria), false);
+        }
+        return result;
+    }
 
-        Streams.mapWithIndex(
-                criteria.stream(),
-                (crit, idx) -> buildWhereCondition(crit, idx == 0 ? " " : " and ")
-        )
-        .forEachOrdered(result::append);
+    public CountQuery buildCappedCountSqlForWebFilters(Map<String, SequencedSet<SearchValAndOp>> criteria, int cap) {
+        var filters = webFiltersToInternalFilters(criteria);
+        return buildCappedCountSql(filters, cap);
+    }
 
+    /**
+     * builds a statement counting the search results but stopping after cap + 1 rows
+     * so its cost is bounded however broad the criteria are (the result is displayed as "1000+")
+     * @param criteria  the criteria of the search
+     * @param cap   the maximum count computed exactly
+     * @return  the count statement and the parser of its result
+     */
+    public CountQuery buildCappedCountSql(SequencedSet<FilterOpVal> criteria, int cap) {
+        if(cap <= 0){
+            throw new IllegalArgumentException("the cap of the count should be positive but was " + cap);
+        }
+        long startNanos = startTiming();
+        ParamStmtBuilder select = newStatementBuilder(criteria, 1)
+                .append("select count(*) from (select 1");
+        appendFromForSearch(select, criteria);
+        appendWhere(select, criteria, false);
+        select.append(" limit ?", cap + 1)
+                .append(") c");
+        ParameterizedStatement result = select.build();
+        if(listener != QueryBuildListener.NOOP){
+            report(startNanos, result, QueryShape.of(QueryShape.Kind.COUNT, criteria, null), searchJoins(criteria), false);
+        }
+        return new CountQuery(result, CountQuery.Mode.CAPPED, cap);
+    }
+
+    public CountQuery buildEstimatedCountSqlForWebFilters(Map<String, SequencedSet<SearchValAndOp>> criteria) {
+        var filters = webFiltersToInternalFilters(criteria);
+        return buildEstimatedCountSql(filters);
+    }
+
+    /**
+     * builds a statement asking the planner for its estimate of the number of search results
+     * (nothing is counted, the statement is only planned)
+     * @param criteria  the criteria of the search
+     * @return  the explain statement and the parser of its (json) result
+     */
+    public CountQuery buildEstimatedCountSql(SequencedSet<FilterOpVal> criteria) {
+        long startNanos = startTiming();
+        ParamStmtBuilder select = newStatementBuilder(criteria, 0)
+                .append("explain (format json) select 1");
+        appendFromForSearch(select, criteria);
+        appendWhere(select, criteria, false);
+        ParameterizedStatement result = select.build();
+        if(listener != QueryBuildListener.NOOP){
+            report(startNanos, result, QueryShape.of(QueryShape.Kind.COUNT, criteria, null), searchJoins(criteria), false);
+        }
+        return new CountQuery(result, CountQuery.Mode.ESTIMATE, 0);
+    }
+
+    public ExportQuery buildExportSqlForWebFilters(Map<String, SequencedSet<SearchValAndOp>> criteria, List<FmakColumn> columns) {
+        var filters = webFiltersToInternalFilters(criteria);
+        return buildExportSql(filters, columns);
+    }
+
+    /**
+     * builds the statement exporting all the search results at once (no limit / offset), to be streamed
+     * (see {@link com.github.humbletrader.fmak.jdbc.FmakExporter}).
+     * The rows are ordered by price and product attribute id so that two exports of the same data are identical.
+     * @param criteria  the criteria of the search (may be empty to export the whole catalog)
+     * @param columns   the exported columns (any column of the shops, products or product attributes)
+     * @return  the statement and its columns
+     */
+    public ExportQuery buildExportSql(SequencedSet<FilterOpVal> criteria, List<FmakColumn> columns) {
+        if(columns.isEmpty()){
+            throw new IllegalArgumentException("at least one column should be exported");
+        }
+        long startNanos = startTiming();
+        ParamStmtBuilder select = newStatementBuilder(criteria, 0)
+                .append("select");
+        String before = " ";
+        boolean shopColumns = false;
+        for(FmakColumn column : columns){
+            select.append(before).append(column.prefixedColumnName());
+            shopColumns |= column.table() == FmakTable.SHOPS;
+            before = ", ";
+        }
+        select.append(" from products p");
+        if(shopColumns || hasFilterOnTable(criteria, FmakTable.SHOPS)){
+            select.append(" inner join shops s on s.id = p.shop_id");
+        }
+        select.append(" inner join product_attributes a on p.id = a.product_id");
+        appendWhere(select, criteria, false);
+        select.append(" order by a.price, a.id");
+        ParameterizedStatement result = select.build();
+        if(listener != QueryBuildListener.NOOP){
+            Set<FmakTable> joinedTables = searchJoins(criteria);
+            if(shopColumns){
+                joinedTables.add(FmakTable.SHOPS);
+            }
+            report(startNanos, result, QueryShape.of(QueryShape.Kind.EXPORT, criteria, null), joinedTables, false);
+        }
+        return new ExportQuery(result, List.copyOf(columns));
+    }
+
+    /**
+     * computes only the parameters of the statement built by {@link #buildSearchSql(SequencedSet, int)}
+     * (in the same order) without keeping the sql
+     */
+    ParamValues searchParams(SequencedSet<FilterOpVal> criteria, int page){
+        return renderSearch(ParamStmtBuilder.paramsOnly(countValues(criteria) + 2), criteria, Projection.SEARCH_ROW, page).params();
+    }
+
+    /**
+     * computes only the parameters of the statement built by {@link #buildDistinctValuesSql(SequencedSet, SupportedFilter)}
+     * (in the same order) without keeping the sql
+     */
+    ParamValues distinctValuesParams(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        return renderDistinctValues(ParamStmtBuilder.paramsOnly(countValues(criteria)), criteria, distinctColumn).params();
+    }
+
+    /**
+     * same as {@link #buildSearchSql(SequencedSet, int)} for a shape whose sql was already rendered:
+     * only the parameters are computed. The statement is reported to the listener like a built one
+     */
+    ParameterizedStatement buildSearchSql(String cachedSql, SequencedSet<FilterOpVal> criteria, int page){
+        long startNanos = startTiming();
+        ParameterizedStatement result = new ParameterizedStatement(cachedSql, searchParams(criteria, page));
+        if(listener != QueryBuildListener.NOOP){
+            reportSearch(startNanos, result, criteria, Projection.SEARCH_ROW);
+        }
+        return result;
+    }
+
+    /**
+     * same as {@link #buildDistinctValuesSql(SequencedSet, SupportedFilter)} for a shape whose sql was already rendered:
+     * only the parameters are computed. The statement is reported to the listener like a built one
+     */
+    ParameterizedStatement buildDistinctValuesSql(String cachedSql, SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        long startNanos = startTiming();
+        ParameterizedStatement result = new ParameterizedStatement(cachedSql, distinctValuesParams(criteria, distinctColumn));
+        if(listener != QueryBuildListener.NOOP){
+            reportDistinctValues(startNanos, result, criteria, distinctColumn);
+        }
         return result;
     }
 
-    private ParamStmtBuilder buildWhereCondition(FilterOpVal filterOpVal,
-                                                 String before){
-        ParamStmtBuilder result = new ParamStmtBuilder();
-        result.append(before);
+    /**
+     * @return  the current time if the statements are reported to a listener, otherwise 0 (the clock is not read)
+     */
+    private long startTiming(){
+        return listener == QueryBuildListener.NOOP ? 0L : System.nanoTime();
+    }
 
-        FmakColumn column = filterOpVal.filter().getColumn();
+    private void report(long startNanos, ParameterizedStatement statement, QueryShape shape,
+                        Set<FmakTable> joinedTables, boolean attributesInExists){
+        listener.onStatementBuilt(new QueryBuildEvent(
+                shape,
+                System.nanoTime() - startNanos,
+                statement.getSqlWithoutParameters().length(),
+                statement.getParams().size(),
+                joinedTables,
+                attributesInExists
+        ));
+    }
+
+    private static Set<FmakTable> searchJoins(SequencedSet<FilterOpVal> criteria){
+        return hasFilterOnTable(criteria, FmakTable.SHOPS) ?
+                EnumSet.of(FmakTable.SHOPS, FmakTable.PRODUCT_ATTRIBUTES) :
+                EnumSet.of(FmakTable.PRODUCT_ATTRIBUTES);
+    }
+
+    private static Set<FmakTable> distinctJoins(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        Set<FmakTable> result = EnumSet.noneOf(FmakTable.class);
+        if(FmakTable.SHOPS == distinctColumn.getColumn().table() || hasFilterOnTable(criteria, FmakTable.SHOPS)){
+            result.add(FmakTable.SHOPS);
+        }
+        if(needsProductAttributesJoin(distinctColumn)){
+            result.add(FmakTable.PRODUCT_ATTRIBUTES);
+        }
+        return result;
+    }
+
+    /**
+     * creates a builder big enough to hold the whole statement for the given criteria
+     * so that rendering happens in a single buffer without intermediate builders or re-allocations
+     * @param criteria  the criteria rendered in the where clause
+     * @param extraParams   the number of parameters added besides the criteria values (limit, offset, etc)
+     */
+    private ParamStmtBuilder newStatementBuilder(SequencedSet<FilterOpVal> criteria, int extraParams){
+        return newStatementBuilder(criteria, extraParams, 1);
+    }
+
+    /**
+     * same as above for statements repeating the criteria several times (ie. unions)
+     * @param repetitions   how many times the criteria is rendered in the statement
+     */
+    private ParamStmtBuilder newStatementBuilder(SequencedSet<FilterOpVal> criteria, int extraParams, int repetitions){
+        int criteriaValues = countValues(criteria);
+        return new ParamStmtBuilder(
+                (STATEMENT_SQL_CAPACITY + criteriaValues * CONDITION_SQL_CAPACITY) * repetitions,
+                criteriaValues * repetitions + extraParams
+        );
+    }
 
-        Streams.mapWithIndex(
-                    filterOpVal.values().stream(),
-                    (searchValAndOp, idx) -> buildWhereSingleCondition(column, searchValAndOp, idx == 0 ? "" : " and ")
-                )
-                .forEachOrdered(result::append);
+    private static int countValues(SequencedSet<FilterOpVal> criteria){
+        int result = 0;
+        for(FilterOpVal filterOpVal : criteria){
+            result += filterOpVal.values().size();
+        }
         return result;
     }
 
-    private ParamStmtBuilder buildWhereSingleCondition(FmakColumn column, SearchValAndOp searchValAndOp, String before){
-        ParamStmtBuilder result = new ParamStmtBuilder();
-        result.append(before);
-        result.append(column.prefixedColumnName());
-        var sqlOp = SqlOperators.forJs(searchValAndOp.op());
-        return switch(sqlOp){
-            case ANY -> result.append(" in ( ? )", searchValAndOp.value(), column.sqlType());
-            default -> result.append(" " + sqlOp.getSqlOperator() + " ?", searchValAndOp.value(), column.sqlType());
-        };
+    private static boolean hasFilterOnTable(SequencedSet<FilterOpVal> criteria, FmakTable table){
+        for(FilterOpVal filterOpVal : criteria){
+            if(filterOpVal.filter().getColumn().table() == table){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * renders the where clause of the sql for the given criteria directly into the statement.
+     * @param statement the statement being built
+     * @param criteria  the criteria
+     * @param attributesInExists    true if the conditions on the product attributes are checked
+     *                              in an "exists" sub-query (rendered after the other conditions)
+     *                              instead of directly on the joined product attributes
+     * @return  the sql to be rendered before the next condition (" where " if the criteria are empty, " and " otherwise)
+     */
+    private String appendWhere(ParamStmtBuilder statement, SequencedSet<FilterOpVal> criteria, boolean attributesInExists){
+        String before = " where ";
+        for(FilterOpVal filterOpVal : criteria){
+            if(!attributesInExists || filterOpVal.filter().getColumn().table() != FmakTable.PRODUCT_ATTRIBUTES){
+                before = appendFilterConditions(statement, filterOpVal, before);
+            }
+        }
+        if(attributesInExists){
+            statement.append(before).append("exists (select 1 from product_attributes a where a.product_id = p.id");
+            for(FilterOpVal filterOpVal : criteria){
+                if(filterOpVal.filter().getColumn().table() == FmakTable.PRODUCT_ATTRIBUTES){
+                    appendFilterConditions(statement, filterOpVal, " and ");
+                }
+            }
+            statement.append(")");
+            before = " and ";
+        }
+        return before;
+    }
+
+    /**
+     * renders the conditions of a single filter.
+     * All the values searched with the 'any' operator are rendered as a single "= any(?)" condition
+     * bound to an array, so that the sql does not depend on the number of values selected.
+     * @param statement the statement being built
+     * @param filterOpVal   the filter
+     * @param before    the sql rendered before the first condition
+     * @return  the sql to be rendered before the next condition
+     */
+    private String appendFilterConditions(ParamStmtBuilder statement, FilterOpVal filterOpVal, String before){
+        return appendFilterConditions(statement, filterOpVal.filter().getColumn(), filterOpVal, before);
+    }
+
+    /**
+     * same as above but the conditions are rendered on the given column (ie. the column of the rollup)
+     */
+    private String appendFilterConditions(ParamStmtBuilder statement, FmakColumn column, FilterOpVal filterOpVal, String before){
+        List<String> anyValues = null;
+        for(SearchValAndOp searchValAndOp : filterOpVal.values()){
+            var sqlOp = SqlOperators.forJs(searchValAndOp.op());
+            if(sqlOp == SqlOperators.ANY){
+                if(anyValues == null){
+                    anyValues = new ArrayList<>(filterOpVal.values().size());
+                }
+                anyValues.add(searchValAndOp.value());
+            } else {
+                statement.append(before).append(column.prefixedColumnName())
+                        .append(" ").append(sqlOp.getSqlOperator()).append(" ?", searchValAndOp.value(), column.sqlType());
+                before = " and ";
+            }
+        }
+        if(anyValues != null){
+            statement.append(before).append(column.prefixedColumnName())
+                    .append(" = any(?)", anyValues, column.sqlType());
+            before = " and ";
+        }
+        return before;
     }
 
     @Deprecated //todo: as the parser gets better we don't need this method anymore
-    private String avoidForbiddenValues(FmakColumn column){
-        return switch(column){
-            case ProductTable.year -> " and year <> -1 and year <> -2"; //still needed
-            case ProductTable.version -> " and version <> 'not needed' and version <> 'unknown'"; //is this still needed ?
-            default -> "";
-        };
-    }
-
-    private SequencedSet<FilterOpVal> webFiltersToInternalFilters(Map<String, SequencedSet<SearchValAndOp>> webFilters){
-        return webFilters.entrySet()
-                .stream()
-                .map(entry ->
-                        new FilterOpVal(
-                                SupportedFilter.filterFromName(entry.getKey()),
-                                entry.getValue()
-                        )
-                )
-                .sorted((fov1, fov2) -> Integer.compare(fov2.filter().getPriorityInSqlWhereClause(), fov1.filter().getPriorityInSqlWhereClause()))
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+    private void appendForbiddenValues(ParamStmtBuilder statement, FmakColumn column, String before){
+        switch(column){
+            case ProductTable.year -> statement.append(before).append("year <> -1 and year <> -2"); //still needed
+            case ProductTable.version -> statement.append(before).append("version <> 'not needed' and version <> 'unknown'"); //is this still needed ?
+            default -> {}
+        }
+    }
+
+    /**
+     * converts the filters received from the web into internal filters ordered by selectivity
+     * (the filters keeping the fewest rows first). The names of the filters and the operators are validated here
+     * so that a bad request fails before any sql is rendered.
+     * @param webFilters    the filters received from the web (name in website of the filter -> values and operators)
+     * @return  the internal filters, ready to be passed to the build methods (they can be reused for several statements)
+     * @throws IllegalArgumentException for unknown filters or operators
+     */
+    public SequencedSet<FilterOpVal> webFiltersToInternalFilters(Map<String, SequencedSet<SearchValAndOp>> webFilters){
+        List<FilterOpVal> result = new ArrayList<>(webFilters.size());
+        for(Map.Entry<String, SequencedSet<SearchValAndOp>> entry : webFilters.entrySet()){
+            for(SearchValAndOp searchValAndOp : entry.getValue()){
+                SqlOperators.forJs(searchValAndOp.op());
+            }
+            result.add(new FilterOpVal(SupportedFilter.requireFilterFromName(entry.getKey()), entry.getValue()));
+        }
+        result.sort(Comparator.comparingDouble(statistics::selectivity));
+        return new LinkedHashSet<>(result);
     }
 }
@@ -1,17 +1,27 @@
 package com.github.humbletrader.fmak.query;
 
 public enum FmakTable {
-    SHOPS("s"),
-    PRODUCTS("p"),
-    PRODUCT_ATTRIBUTES("a");
+    SHOPS("s", "shops"),
+    PRODUCTS("p", "products"),
+    PRODUCT_ATTRIBUTES("a", "product_attributes"),
+    /**
+     * the optional pre-aggregated facets (see {@link RollupDefinition})
+     */
+    FACET_ROLLUP("r", "facet_rollup");
 
     private String prefixInSql;
+    private String tableName;
 
-    FmakTable(String prefixInSql){
+    FmakTable(String prefixInSql, String tableName){
         this.prefixInSql= prefixInSql;
+        this.tableName = tableName;
     }
 
     public String prefix(){
         return prefixInSql;
     }
+
+    public String tableName(){
+        return tableName;
+    }
 }
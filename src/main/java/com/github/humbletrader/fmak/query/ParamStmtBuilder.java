@@ -1,6 +1,5 @@
 package com.github.humbletrader.fmak.query;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -10,52 +9,146 @@ import java.util.List;
  */
 public class ParamStmtBuilder {
 
-    private StringBuilder sql;
-    private List<Object> values;
+    private final StringBuilder sql; //null when only the parameters are collected
+    private final ParamValues values;
 
     public ParamStmtBuilder(){
         sql = new StringBuilder();
-        values = new ArrayList<>();
+        values = new ParamValues();
+    }
+
+    /**
+     * creates a builder pre-sized for the whole statement (avoids re-allocations while appending)
+     * @param sqlCapacity   the expected length of the sql
+     * @param paramsCapacity    the expected number of parameters
+     */
+    public ParamStmtBuilder(int sqlCapacity, int paramsCapacity){
+        sql = new StringBuilder(sqlCapacity);
+        values = new ParamValues(paramsCapacity);
+    }
+
+    private ParamStmtBuilder(ParamValues values){
+        this.sql = null;
+        this.values = values;
+    }
+
+    /**
+     * creates a builder which ignores the sql parts and only collects the parameters.
+     * Useful when the sql is already known (ie. cached) and only the parameters are needed
+     * @param paramsCapacity    the expected number of parameters
+     */
+    static ParamStmtBuilder paramsOnly(int paramsCapacity){
+        return new ParamStmtBuilder(new ParamValues(paramsCapacity));
+    }
+
+    private void appendSql(CharSequence sqlPart){
+        if(sql != null && sqlPart != null){
+            sql.append(sqlPart);
+        }
     }
 
     public ParamStmtBuilder append(String sqlPart){
-        sql.append(sqlPart);
+        appendSql(sqlPart);
         return this;
     }
 
     public ParamStmtBuilder append(String sqlPart,
                                    String stringParam){
-        sql.append(sqlPart);
+        appendSql(sqlPart);
         values.add(stringParam);
         return this;
     }
 
     public ParamStmtBuilder append(String sqlPart,
-                                   Integer intParam){
-        sql.append(sqlPart);
+                                   int intParam){
+        appendSql(sqlPart);
         values.add(intParam);
         return this;
     }
 
+    public ParamStmtBuilder append(String sqlPart,
+                                   long longParam){
+        appendSql(sqlPart);
+        values.add(longParam);
+        return this;
+    }
+
+    public ParamStmtBuilder append(String sqlPart,
+                                   double doubleParam){
+        appendSql(sqlPart);
+        values.add(doubleParam);
+        return this;
+    }
+
     public ParamStmtBuilder append(String sqlPart,
                                    String paramStrValue,
                                    SqlType sqlType){
-        sql.append(sqlPart);
-        Object castedValue = switch (sqlType){
+        appendSql(sqlPart);
+        values.add(paramStrValue, sqlType);
+        return this;
+    }
+
+    /**
+     * appends a chunk of sql having a single parameter bound to an array (ie. "= any(?)")
+     * @param sqlPart   the sql
+     * @param paramStrValues    the values of the array as received from the web
+     * @param sqlType   the sql type of the elements of the array
+     */
+    public ParamStmtBuilder append(String sqlPart,
+                                   List<String> paramStrValues,
+                                   SqlType sqlType){
+        appendSql(sqlPart);
+        values.addArray(castArrayParam(paramStrValues, sqlType));
+        return this;
+    }
+
+    /**
+     * converts the string value received from the web into the java type expected by the jdbc driver
+     * @param paramStrValue the value as received from the web
+     * @param sqlType   the sql type of the column
+     * @return  the value to be bound to the statement
+     */
+    static Object castParam(String paramStrValue, SqlType sqlType){
+        return switch (sqlType){
             case VARCHAR_TYPE -> paramStrValue;
             case INT_TYPE -> Integer.valueOf(paramStrValue);
             case DOUBLE_TYPE -> Double.valueOf(paramStrValue);
+            case BIGINT_TYPE -> Long.valueOf(paramStrValue);
+            case BOOLEAN_TYPE -> Boolean.valueOf(paramStrValue);
         };
-        values.add(castedValue);
-        return this;
+    }
+
+    /**
+     * converts the string values received from the web into a java array of the type expected by the jdbc driver
+     * (String[], Integer[], Double[], Long[] or Boolean[])
+     */
+    static Object[] castArrayParam(List<String> paramStrValues, SqlType sqlType){
+        Object[] result = switch (sqlType){
+            case VARCHAR_TYPE -> new String[paramStrValues.size()];
+            case INT_TYPE -> new Integer[paramStrValues.size()];
+            case DOUBLE_TYPE -> new Double[paramStrValues.size()];
+            case BIGINT_TYPE -> new Long[paramStrValues.size()];
+            case BOOLEAN_TYPE -> new Boolean[paramStrValues.size()];
+        };
+        for(int i = 0; i < result.length; i++){
+            result[i] = castParam(paramStrValues.get(i), sqlType);
+        }
+        return result;
     }
 
     public ParamStmtBuilder append(ParamStmtBuilder another){
-        sql.append(another.sql);
+        appendSql(another.sql);
         values.addAll(another.values);
         return this;
     }
 
+    /**
+     * @return  the parameters collected so far
+     */
+    ParamValues params(){
+        return values;
+    }
+
     public ParameterizedStatement build(){
         return new ParameterizedStatement(sql.toString(), values);
     }
@@ -0,0 +1,216 @@
+package com.github.humbletrader.fmak.query;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * the values of the parameters of a statement, kept without boxing:
+ * the numbers are stored in a primitive array (doubles as raw long bits), the strings / arrays in an object array
+ * and each slot has a type tag telling how it should be bound to the jdbc statement.
+ *
+ * This class is not thread safe while values are added.
+ */
+public final class ParamValues {
+
+    private static final byte STRING = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte ARRAY = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte OBJECT = 6;
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private byte[] types;
+    private long[] numbers;
+    private Object[] objects;
+    private int size;
+
+    public ParamValues(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ParamValues(int capacity){
+        int initialCapacity = Math.max(capacity, 1);
+        types = new byte[initialCapacity];
+        numbers = new long[initialCapacity];
+        objects = new Object[initialCapacity];
+    }
+
+    /**
+     * converts a list of boxed values (String, Integer, Long, Double, Boolean or arrays of them).
+     * Any other value (ie. BigDecimal, LocalDate) is kept as is and bound with setObject
+     */
+    public static ParamValues of(List<?> values){
+        ParamValues result = new ParamValues(values.size());
+        for(Object value : values){
+            switch (value){
+                case Integer intValue -> result.add(intValue.intValue());
+                case Long longValue -> result.add(longValue.longValue());
+                case Double doubleValue -> result.add(doubleValue.doubleValue());
+                case Boolean booleanValue -> result.add(booleanValue.booleanValue());
+                case Object[] arrayValue -> result.addArray(arrayValue);
+                case String stringValue -> result.add(stringValue);
+                case null -> result.add((String) null);
+                default -> result.addObject(value);
+            }
+        }
+        return result;
+    }
+
+    public ParamValues add(String value){
+        int slot = nextSlot(STRING);
+        objects[slot] = value;
+        return this;
+    }
+
+    public ParamValues add(int value){
+        int slot = nextSlot(INT); //before accessing the array which may be re-allocated
+        numbers[slot] = value;
+        return this;
+    }
+
+    public ParamValues add(long value){
+        int slot = nextSlot(LONG);
+        numbers[slot] = value;
+        return this;
+    }
+
+    public ParamValues add(double value){
+        int slot = nextSlot(DOUBLE);
+        numbers[slot] = Double.doubleToRawLongBits(value);
+        return this;
+    }
+
+    public ParamValues add(boolean value){
+        int slot = nextSlot(BOOLEAN);
+        numbers[slot] = value ? 1 : 0;
+        return this;
+    }
+
+    /**
+     * adds a parameter bound to a sql array
+     * @param value the elements of the array (String[], Integer[], Double[], Long[] or Boolean[])
+     */
+    public ParamValues addArray(Object[] value){
+        int slot = nextSlot(ARRAY);
+        objects[slot] = value;
+        return this;
+    }
+
+    /**
+     * adds a parameter of any other type, bound with {@link PreparedStatement#setObject(int, Object)}
+     */
+    public ParamValues addObject(Object value){
+        int slot = nextSlot(OBJECT);
+        objects[slot] = value;
+        return this;
+    }
+
+    /**
+     * adds a value received from the web converted according to the sql type of its column
+     */
+    public ParamValues add(String paramStrValue, SqlType sqlType){
+        return switch (sqlType){
+            case VARCHAR_TYPE -> add(paramStrValue);
+            case INT_TYPE -> add(Integer.parseInt(paramStrValue));
+            case DOUBLE_TYPE -> add(Double.parseDouble(paramStrValue));
+            case BIGINT_TYPE -> add(Long.parseLong(paramStrValue));
+            case BOOLEAN_TYPE -> add(Boolean.parseBoolean(paramStrValue));
+        };
+    }
+
+    public ParamValues addAll(ParamValues another){
+        for(int i = 0; i < another.size; i++){
+            int slot = nextSlot(another.types[i]);
+            numbers[slot] = another.numbers[i];
+            objects[slot] = another.objects[i];
+        }
+        return this;
+    }
+
+    private int nextSlot(byte type){
+        if(size == types.length){
+            int newCapacity = size * 2;
+            types = Arrays.copyOf(types, newCapacity);
+            numbers = Arrays.copyOf(numbers, newCapacity);
+            objects = Arrays.copyOf(objects, newCapacity);
+        }
+        types[size] = type;
+        return size++;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * binds all the values to the statement (the first value to the first parameter and so on)
+     * calling directly the typed setters of the statement
+     */
+    public void bindTo(PreparedStatement statement) throws SQLException {
+        for(int i = 0; i < size; i++){
+            int paramIndex = i + 1;
+            switch (types[i]){
+                case STRING -> statement.setString(paramIndex, (String) objects[i]);
+                case INT -> statement.setInt(paramIndex, (int) numbers[i]);
+                case LONG -> statement.setLong(paramIndex, numbers[i]);
+                case DOUBLE -> statement.setDouble(paramIndex, Double.longBitsToDouble(numbers[i]));
+                case BOOLEAN -> statement.setBoolean(paramIndex, numbers[i] != 0);
+                case OBJECT -> statement.setObject(paramIndex, objects[i]);
+                case ARRAY -> {
+                    Object[] elements = (Object[]) objects[i];
+                    statement.setArray(paramIndex, statement.getConnection().createArrayOf(sqlArrayType(elements), elements));
+                }
+                default -> throw new IllegalStateException("unknown parameter type " + types[i]);
+            }
+        }
+    }
+
+    private static String sqlArrayType(Object[] elements){
+        return switch (elements){
+            case Integer[] ignored -> "integer";
+            case Double[] ignored -> "float8";
+            case Long[] ignored -> "bigint";
+            case Boolean[] ignored -> "boolean";
+            default -> "varchar";
+        };
+    }
+
+    /**
+     * @return  the value of the parameter at the given position (boxed)
+     */
+    public Object get(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException(index);
+        }
+        return switch (types[index]){
+            case INT -> (int) numbers[index];
+            case LONG -> numbers[index];
+            case DOUBLE -> Double.longBitsToDouble(numbers[index]);
+            case BOOLEAN -> numbers[index] != 0;
+            default -> objects[index];
+        };
+    }
+
+    /**
+     * @return  all the values boxed in an (unmodifiable) list
+     */
+    public List<Object> asList(){
+        List<Object> result = new ArrayList<>(size);
+        for(int i = 0; i < size; i++){
+            result.add(get(i));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.deepToString(asList().toArray());
+    }
+}
@@ -1,15 +1,21 @@
 package com.github.humbletrader.fmak.query;
 
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.List;
 
 public class ParameterizedStatement {
 
     private final String sqlWithoutParameters;
-    private final List<Object> paramValues;
+    private final ParamValues paramValues;
 
 
     public ParameterizedStatement(String sqlWithoutParameters, List<Object> values){
+        this(sqlWithoutParameters, ParamValues.of(values));
+    }
+
+    public ParameterizedStatement(String sqlWithoutParameters, ParamValues values){
         this.sqlWithoutParameters = sqlWithoutParameters;
         this.paramValues = values;
     }
@@ -18,16 +24,29 @@ public class ParameterizedStatement {
         return sqlWithoutParameters;
     }
 
+    /**
+     * @return  the values of the parameters boxed into a list (prefer {@link #bindTo(PreparedStatement)} to bind them)
+     */
     public List<Object> getParamValues() {
+        return paramValues.asList();
+    }
+
+    public ParamValues getParams() {
         return paramValues;
     }
 
+    /**
+     * binds the values of the parameters to the given statement (which should be prepared with {@link #getSqlWithoutParameters()})
+     */
+    public void bindTo(PreparedStatement statement) throws SQLException {
+        paramValues.bindTo(statement);
+    }
+
     @Override
     public String toString() {
         return "ParameterizedStatement{" +
                 "sqlWithoutParameters='" + sqlWithoutParameters + '\'' +
-                ", paramValues=" + paramValues +
+                ", paramValues=" + paramValues + //arrays are bound for the 'any' conditions
                 '}';
     }
 }
-
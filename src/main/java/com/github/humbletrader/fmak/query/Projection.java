@@ -0,0 +1,168 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.tables.ProductAttributesTable;
+import com.github.humbletrader.fmak.tables.ProductTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the columns selected by a search (see {@link FmakSqlBuilder#buildSearchSql(java.util.SequencedSet, Projection, int)}).
+ * A column may be aggregated per product (ie. the minimum price of all the attributes of a product),
+ * in which case the search returns one row per product.
+ *
+ * This class is immutable.
+ */
+public final class Projection {
+
+    public enum Aggregate {
+        NONE, MIN, MAX,
+        /**
+         * all the values of the product in a sql array, ordered by price for the attribute columns
+         * (the attributes are then joined) and by the value itself for the others
+         */
+        ARRAY
+    }
+
+    /**
+     * @param column    the selected column
+     * @param aggregate the aggregate function applied to the column per product
+     */
+    public record Item(FmakColumn column, Aggregate aggregate) {
+
+        String render(){
+            return switch (aggregate){
+                case NONE -> column.prefixedColumnName();
+                case MIN -> "min(" + column.prefixedColumnName() + ") as min_" + column.colName();
+                case MAX -> "max(" + column.prefixedColumnName() + ") as max_" + column.colName();
+                case ARRAY -> "array_agg(" + column.prefixedColumnName() + " order by " + arrayOrder() + ") as array_" + column.colName();
+            };
+        }
+
+        private String arrayOrder(){
+            return column.table() == FmakTable.PRODUCT_ATTRIBUTES ?
+                    ProductAttributesTable.price.prefixedColumnName() : column.prefixedColumnName();
+        }
+    }
+
+    /**
+     * the columns of the search results ({@link FmakSqlBuilder#buildSearchSql(java.util.SequencedSet, int)})
+     */
+    public static final Projection SEARCH_ROW = Projection.of(
+            ProductTable.brand_name_version,
+            ProductTable.link,
+            ProductAttributesTable.price,
+            ProductAttributesTable.size,
+            ProductTable.condition,
+            ProductTable.visible_to_public
+    );
+
+    /**
+     * the columns of the keyset search results ({@link FmakSqlBuilder#buildSearchSql(java.util.SequencedSet, SearchCursor)}):
+     * the search row and the id of the attribute (the second part of the cursor)
+     */
+    public static final Projection KEYSET_ROW = SEARCH_ROW.and(ProductAttributesTable.id);
+
+    /**
+     * one row per product: its minimum price and its sizes (see {@link FmakSqlBuilder#buildGroupedSearchSql(java.util.SequencedSet, int)})
+     */
+    public static final Projection PRODUCT_ROW = Projection.of(
+            ProductTable.id,
+            ProductTable.brand_name_version,
+            ProductTable.link,
+            ProductTable.condition,
+            ProductTable.visible_to_public
+    ).min(ProductAttributesTable.price).array(ProductAttributesTable.size);
+
+    private final List<Item> items;
+
+    private Projection(List<Item> items){
+        this.items = List.copyOf(items);
+    }
+
+    public static Projection of(FmakColumn... columns){
+        if(columns.length == 0){
+            throw new IllegalArgumentException("at least one column should be selected");
+        }
+        List<Item> items = new ArrayList<>(columns.length);
+        for(FmakColumn column : columns){
+            items.add(new Item(column, Aggregate.NONE));
+        }
+        return new Projection(items);
+    }
+
+    /**
+     * @return  a new projection selecting also the given column
+     */
+    public Projection and(FmakColumn column){
+        return with(new Item(column, Aggregate.NONE));
+    }
+
+    /**
+     * @return  a new projection selecting also the minimum of the column per product
+     */
+    public Projection min(FmakColumn column){
+        return with(new Item(column, Aggregate.MIN));
+    }
+
+    /**
+     * @return  a new projection selecting also the maximum of the column per product
+     */
+    public Projection max(FmakColumn column){
+        return with(new Item(column, Aggregate.MAX));
+    }
+
+    /**
+     * @return  a new projection selecting also all the values of the column per product (as an array)
+     */
+    public Projection array(FmakColumn column){
+        return with(new Item(column, Aggregate.ARRAY));
+    }
+
+    private Projection with(Item item){
+        List<Item> newItems = new ArrayList<>(items.size() + 1);
+        newItems.addAll(items);
+        newItems.add(item);
+        return new Projection(newItems);
+    }
+
+    public List<Item> items(){
+        return items;
+    }
+
+    public boolean hasAggregates(){
+        for(Item item : items){
+            if(item.aggregate() != Aggregate.NONE){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return  true if a column of the table is selected (aggregated or not)
+     */
+    public boolean uses(FmakTable table){
+        for(Item item : items){
+            if(item.column().table() == table){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Projection projection && items.equals(projection.items);
+    }
+
+    @Override
+    public int hashCode() {
+        return items.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Projection" + items;
+    }
+}
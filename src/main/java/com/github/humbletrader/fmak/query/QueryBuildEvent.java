@@ -0,0 +1,21 @@
+package com.github.humbletrader.fmak.query;
+
+import java.util.Set;
+
+/**
+ * describes a statement built by {@link FmakSqlBuilder}
+ *
+ * @param shape the shape of the query (the kind of statement, the filters and their operators)
+ * @param buildNanos    the time spent building the statement
+ * @param sqlLength the length of the sql
+ * @param paramCount    the number of parameters
+ * @param joinedTables  the tables joined to the products
+ * @param attributesInExists    true if the attribute filters are checked in an "exists" sub-query
+ */
+public record QueryBuildEvent(QueryShape shape,
+                              long buildNanos,
+                              int sqlLength,
+                              int paramCount,
+                              Set<FmakTable> joinedTables,
+                              boolean attributesInExists) {
+}
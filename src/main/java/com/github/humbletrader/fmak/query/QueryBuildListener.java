@@ -0,0 +1,17 @@
+package com.github.humbletrader.fmak.query;
+
+/**
+ * notified by {@link FmakSqlBuilder} after each statement is built.
+ * The listener is called on the thread building the statement so it should be fast and thread safe
+ * (see {@link com.github.humbletrader.fmak.metrics.QueryMetrics} for a lock-free aggregator).
+ */
+@FunctionalInterface
+public interface QueryBuildListener {
+
+    /**
+     * the default listener: when used the builder does not even read the clock
+     */
+    QueryBuildListener NOOP = event -> {};
+
+    void onStatementBuilt(QueryBuildEvent event);
+}
@@ -0,0 +1,82 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SequencedSet;
+
+/**
+ * the "shape" of a query: everything that influences the sql text but not the parameter values
+ * (the kind of statement, the selected columns of the searches, the filters in their order, the operators
+ * and the number of values per filter except for the 'any' values which are bound as a single array).
+ * Two requests with the same shape produce exactly the same sql string.
+ *
+ * @param kind  the kind of statement (search, distinct values, etc)
+ * @param distinctColumn    the column for distinct values statements (null for the other kinds)
+ * @param projection    the columns selected by the searches (null for the other kinds)
+ * @param filters   the filters and their operators, in the order they are rendered in the where clause
+ */
+public record QueryShape(Kind kind, SupportedFilter distinctColumn, Projection projection, List<FilterShape> filters) {
+
+    public enum Kind {
+        SEARCH, KEYSET_SEARCH, DISTINCT, DISTINCT_WITH_COUNT, FACETS, COUNT, EXPORT, AUTOCOMPLETE
+    }
+
+    /**
+     * @param filter    the filter
+     * @param operators the operators of each value in the filter (in the order they are rendered).
+     *                  All the values with the 'any' operator are rendered as a single condition
+     *                  so {@link SqlOperators#ANY} appears at most once (at the end)
+     */
+    public record FilterShape(SupportedFilter filter, List<SqlOperators> operators) {
+    }
+
+    public static QueryShape search(SequencedSet<FilterOpVal> criteria){
+        return search(criteria, Projection.SEARCH_ROW);
+    }
+
+    public static QueryShape search(SequencedSet<FilterOpVal> criteria, Projection projection){
+        return new QueryShape(Kind.SEARCH, null, projection, filterShapes(criteria));
+    }
+
+    public static QueryShape distinct(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        return new QueryShape(Kind.DISTINCT, distinctColumn, null, filterShapes(criteria));
+    }
+
+    /**
+     * @param kind  the kind of statement (the searches select the default columns of their kind)
+     * @param criteria  the criteria
+     * @param distinctColumn    the distinct column (null if not applicable)
+     */
+    public static QueryShape of(Kind kind, SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        Projection projection = switch (kind){
+            case SEARCH -> Projection.SEARCH_ROW;
+            case KEYSET_SEARCH -> Projection.KEYSET_ROW;
+            default -> null;
+        };
+        return new QueryShape(kind, distinctColumn, projection, filterShapes(criteria));
+    }
+
+    private static List<FilterShape> filterShapes(SequencedSet<FilterOpVal> criteria){
+        List<FilterShape> result = new ArrayList<>(criteria.size());
+        for(FilterOpVal filterOpVal : criteria){
+            List<SqlOperators> operators = new ArrayList<>(filterOpVal.values().size());
+            boolean hasAny = false;
+            for(SearchValAndOp searchValAndOp : filterOpVal.values()){
+                var sqlOp = SqlOperators.forJs(searchValAndOp.op());
+                if(sqlOp == SqlOperators.ANY){
+                    hasAny = true;
+                } else {
+                    operators.add(sqlOp);
+                }
+            }
+            if(hasAny){
+                operators.add(SqlOperators.ANY);
+            }
+            result.add(new FilterShape(filterOpVal.filter(), List.copyOf(operators)));
+        }
+        return List.copyOf(result);
+    }
+}
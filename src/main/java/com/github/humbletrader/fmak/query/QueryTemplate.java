@@ -0,0 +1,173 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+
+import java.util.*;
+
+/**
+ * declares the filters and operators of a query known in advance (ie. the hottest search of the website)
+ * so that it is validated and rendered once, at startup, by {@link #compile(FmakSqlBuilder)}.
+ * At request time only the values are bound to the {@link CompiledQuery}.
+ * The filters are rendered in the order they are declared.
+ *
+ * This class is not thread safe (declare the template then share the compiled query).
+ */
+public class QueryTemplate {
+
+    private final QueryShape.Kind kind;
+    private final SupportedFilter distinctColumn;
+    private final SequencedMap<SupportedFilter, List<SqlOperators>> operatorsByFilter = new LinkedHashMap<>();
+
+    private QueryTemplate(QueryShape.Kind kind, SupportedFilter distinctColumn){
+        this.kind = kind;
+        this.distinctColumn = distinctColumn;
+    }
+
+    /**
+     * a template of {@link FmakSqlBuilder#buildSearchSql(SequencedSet, int)}
+     */
+    public static QueryTemplate search(){
+        return new QueryTemplate(QueryShape.Kind.SEARCH, null);
+    }
+
+    /**
+     * a template of {@link FmakSqlBuilder#buildDistinctValuesSql(SequencedSet, SupportedFilter)}
+     */
+    public static QueryTemplate distinct(SupportedFilter distinctColumn){
+        return new QueryTemplate(QueryShape.Kind.DISTINCT, distinctColumn);
+    }
+
+    public static QueryTemplate distinct(String column){
+        return distinct(SupportedFilter.requireFilterFromName(column));
+    }
+
+    /**
+     * @param filterName    the name in website of the filter
+     * @param jsOperators   the operators of the filter (as received from the web)
+     * @throws IllegalArgumentException for unknown filters or operators (see {@link #filter(SupportedFilter, SqlOperators...)})
+     */
+    public QueryTemplate filter(String filterName, String... jsOperators){
+        SqlOperators[] operators = new SqlOperators[jsOperators.length];
+        for(int i = 0; i < jsOperators.length; i++){
+            operators[i] = SqlOperators.forJs(jsOperators[i]);
+        }
+        return filter(SupportedFilter.requireFilterFromName(filterName), operators);
+    }
+
+    /**
+     * @param filter    the filter
+     * @param operators the operators of the filter, each one is a slot bound at request time
+     * @throws IllegalArgumentException if the filter is declared twice, has no or duplicated operators,
+     *              operators which cannot be combined (see {@link #incompatible(SqlOperators, SqlOperators)})
+     *              or an operator not supported by the type of its column (ie. ranges on boolean columns)
+     */
+    public QueryTemplate filter(SupportedFilter filter, SqlOperators... operators){
+        if(operatorsByFilter.containsKey(filter)){
+            throw new IllegalArgumentException("filter declared twice: " + filter.getNameInWebsite());
+        }
+        if(operators.length == 0){
+            throw new IllegalArgumentException("no operator for filter " + filter.getNameInWebsite());
+        }
+        Set<SqlOperators> distinctOperators = EnumSet.noneOf(SqlOperators.class);
+        SqlType sqlType = filter.getColumn().sqlType();
+        for(SqlOperators operator : operators){
+            if(!distinctOperators.add(operator)){
+                throw new IllegalArgumentException("operator " + operator.getJsOperator() + " declared twice for filter " + filter.getNameInWebsite());
+            }
+            for(SqlOperators other : distinctOperators){
+                if(incompatible(operator, other)){
+                    throw new IllegalArgumentException("operators " + other.getJsOperator() + " and " + operator.getJsOperator()
+                            + " cannot be combined for filter " + filter.getNameInWebsite());
+                }
+            }
+            if(!sqlType.supports(operator)){
+                throw new IllegalArgumentException("operator " + operator.getJsOperator() + " not supported by the filter "
+                        + filter.getNameInWebsite() + " of type " + sqlType);
+            }
+        }
+        operatorsByFilter.put(filter, List.of(operators));
+        return this;
+    }
+
+    /**
+     * renders the sql and computes the position of the parameter bound to each slot
+     * @param sqlBuilder    the builder rendering the sql (and providing the rows per page)
+     * @return  the compiled query (immutable and thread safe)
+     */
+    public CompiledQuery compile(FmakSqlBuilder sqlBuilder){
+        //the sql does not depend on the values, so any value of the right type is used for rendering
+        SequencedSet<FilterOpVal> criteria = new LinkedHashSet<>();
+        operatorsByFilter.forEach((filter, operators) -> {
+            SequencedSet<SearchValAndOp> values = new LinkedHashSet<>();
+            for(SqlOperators operator : operators){
+                values.add(new SearchValAndOp(placeholderValue(filter.getColumn().sqlType()), operator.getJsOperator()));
+            }
+            criteria.add(new FilterOpVal(filter, values));
+        });
+
+        ParameterizedStatement rendered = kind == QueryShape.Kind.SEARCH ?
+                sqlBuilder.buildSearchSql(criteria, 0) :
+                sqlBuilder.buildDistinctValuesSql(criteria, distinctColumn);
+
+        //same order as the where clause: the conditions in an "exists" sub-query come last
+        //and the 'any' values of a filter are bound after its other values
+        boolean attributesInExists = kind == QueryShape.Kind.DISTINCT
+                && FmakSqlBuilder.filtersAttributesWithExists(criteria, distinctColumn);
+        List<CompiledQuery.Slot> slots = new ArrayList<>();
+        List<CompiledQuery.Slot> slotsInExists = new ArrayList<>();
+        operatorsByFilter.forEach((filter, operators) -> {
+            List<CompiledQuery.Slot> target = attributesInExists && filter.getColumn().table() == FmakTable.PRODUCT_ATTRIBUTES ?
+                    slotsInExists : slots;
+            for(SqlOperators operator : operators){
+                if(operator != SqlOperators.ANY){
+                    target.add(new CompiledQuery.Slot(filter, operator));
+                }
+            }
+            if(operators.contains(SqlOperators.ANY)){
+                target.add(new CompiledQuery.Slot(filter, SqlOperators.ANY));
+            }
+        });
+        slots.addAll(slotsInExists);
+
+        int pagingParams = kind == QueryShape.Kind.SEARCH ? 2 : 0;
+        if(slots.size() + pagingParams != rendered.getParams().size()){
+            throw new IllegalStateException("the template has " + slots.size() + " slots but the statement "
+                    + rendered.getParams().size() + " parameters: " + rendered.getSqlWithoutParameters());
+        }
+        return new CompiledQuery(rendered.getSqlWithoutParameters(), slots, kind == QueryShape.Kind.SEARCH, sqlBuilder.rowsPerPage());
+    }
+
+    /**
+     * @return  true if the two operators on the same column make one of the conditions redundant or contradictory:
+     *          'eq' with any other operator, 'any' with ranges and two bounds on the same side (ie. 'gt' and 'gte')
+     */
+    static boolean incompatible(SqlOperators first, SqlOperators second){
+        if(first == second){
+            return false;
+        }
+        if(first == SqlOperators.EQ || second == SqlOperators.EQ){
+            return true;
+        }
+        if(first == SqlOperators.ANY || second == SqlOperators.ANY){
+            return first.isRange() || second.isRange();
+        }
+        return lowerBound(first) && lowerBound(second) || upperBound(first) && upperBound(second);
+    }
+
+    private static boolean lowerBound(SqlOperators operator){
+        return operator == SqlOperators.GT || operator == SqlOperators.GTE;
+    }
+
+    private static boolean upperBound(SqlOperators operator){
+        return operator == SqlOperators.LT || operator == SqlOperators.LTE;
+    }
+
+    private static String placeholderValue(SqlType sqlType){
+        return switch (sqlType){
+            case VARCHAR_TYPE -> "";
+            case INT_TYPE, DOUBLE_TYPE, BIGINT_TYPE -> "0";
+            case BOOLEAN_TYPE -> "false";
+        };
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.tables.RollupColumn;
+
+import java.util.*;
+
+/**
+ * a pre-aggregated table (a materialized view) with one row per distinct combination of some
+ * shop / product columns (usually the low cardinality ones: country, category, brand, etc) and the number of products.
+ * The distinct values queries filtering only on these columns are answered by the rollup
+ * (see {@link FmakSqlBuilder#withRollup(RollupDefinition)}) instead of joining the base tables.
+ *
+ * The attribute columns are not supported: a product would be counted once per attribute
+ * and the attribute filters would not be checked on the same attribute row.
+ *
+ * This class is immutable.
+ */
+public final class RollupDefinition {
+
+    private final Map<SupportedFilter, RollupColumn> columns;
+
+    private RollupDefinition(Map<SupportedFilter, RollupColumn> columns){
+        this.columns = columns;
+    }
+
+    /**
+     * @param filters   the columns of the rollup
+     * @throws IllegalArgumentException if there is no column or a column of the product attributes
+     */
+    public static RollupDefinition of(SupportedFilter... filters){
+        if(filters.length == 0){
+            throw new IllegalArgumentException("the rollup needs at least one column");
+        }
+        Map<SupportedFilter, RollupColumn> columns = new EnumMap<>(SupportedFilter.class);
+        for(SupportedFilter filter : filters){
+            if(filter.getColumn().table() == FmakTable.PRODUCT_ATTRIBUTES){
+                throw new IllegalArgumentException("the attribute column " + filter.getNameInWebsite() + " cannot be in the rollup");
+            }
+            columns.put(filter, new RollupColumn(filter.getColumn()));
+        }
+        return new RollupDefinition(Collections.unmodifiableMap(columns));
+    }
+
+    public Set<SupportedFilter> filters(){
+        return columns.keySet();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the filter is not in the rollup
+     */
+    public RollupColumn columnFor(SupportedFilter filter){
+        RollupColumn result = columns.get(filter);
+        if(result == null){
+            throw new IllegalArgumentException("the filter " + filter.getNameInWebsite() + " is not in the rollup");
+        }
+        return result;
+    }
+
+    /**
+     * @return  true if the distinct column and all the filters of the criteria are columns of the rollup
+     */
+    public boolean covers(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        if(!columns.containsKey(distinctColumn)){
+            return false;
+        }
+        for(FilterOpVal filterOpVal : criteria){
+            if(!columns.containsKey(filterOpVal.filter())){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return  true if the statements of this shape are answered by the rollup (distinct values only)
+     */
+    public boolean covers(QueryShape shape){
+        if(shape.kind() != QueryShape.Kind.DISTINCT || !columns.containsKey(shape.distinctColumn())){
+            return false;
+        }
+        for(QueryShape.FilterShape filter : shape.filters()){
+            if(!columns.containsKey(filter.filter())){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return  the statement creating the rollup (as a postgres materialized view)
+     */
+    public String createSql(){
+        StringBuilder baseColumns = new StringBuilder();
+        boolean shopColumns = false;
+        for(SupportedFilter filter : columns.keySet()){
+            if(!baseColumns.isEmpty()){
+                baseColumns.append(", ");
+            }
+            baseColumns.append(filter.getColumn().prefixedColumnName());
+            shopColumns |= filter.getColumn().table() == FmakTable.SHOPS;
+        }
+        StringBuilder result = new StringBuilder("create materialized view if not exists ")
+                .append(FmakTable.FACET_ROLLUP.tableName())
+                .append(" as select ").append(baseColumns).append(", count(*) as product_count")
+                .append(" from products p");
+        if(shopColumns){
+            result.append(" inner join shops s on s.id = p.shop_id");
+        }
+        result.append(" group by ").append(baseColumns);
+        return result.toString();
+    }
+
+    /**
+     * @return  the statements creating an index on each column of the rollup
+     */
+    public List<String> createIndexesSql(){
+        List<String> result = new ArrayList<>(columns.size());
+        for(RollupColumn column : columns.values()){
+            result.add("create index if not exists idx_" + FmakTable.FACET_ROLLUP.tableName() + "_" + column.colName()
+                    + " on " + FmakTable.FACET_ROLLUP.tableName() + " (" + column.colName() + ")");
+        }
+        return result;
+    }
+
+    /**
+     * @return  the statement reloading the rollup from the base tables (to be executed after each import)
+     */
+    public String refreshSql(){
+        return "refresh materialized view " + FmakTable.FACET_ROLLUP.tableName();
+    }
+}
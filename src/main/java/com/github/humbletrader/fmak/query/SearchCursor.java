@@ -0,0 +1,50 @@
+package com.github.humbletrader.fmak.query;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * the position of the last row of a page in a keyset paginated search
+ * (see {@link FmakSqlBuilder#buildSearchSql(java.util.SequencedSet, SearchCursor)}).
+ * The rows are ordered by price and then by the id of the product attribute, so these two values
+ * are enough to find where the next page starts.
+ * The web clients receive it as an opaque token (see {@link #toToken()} and {@link #fromToken(String)})
+ *
+ * @param price the price of the last row seen
+ * @param attributeId   the id (in product_attributes) of the last row seen
+ */
+public record SearchCursor(double price, long attributeId) implements Serializable {
+
+    private static final char SEPARATOR = ':';
+
+    public static SearchCursor of(double price, long attributeId){
+        return new SearchCursor(price, attributeId);
+    }
+
+    /**
+     * @return  an url safe token representing this cursor
+     */
+    public String toToken(){
+        String plain = Double.toString(price) + SEPARATOR + attributeId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token a token created by {@link #toToken()}
+     * @return  the cursor represented by the token
+     * @throws IllegalArgumentException if the token is not a valid cursor
+     */
+    public static SearchCursor fromToken(String token){
+        try {
+            String plain = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separatorIdx = plain.indexOf(SEPARATOR);
+            return new SearchCursor(
+                    Double.parseDouble(plain.substring(0, separatorIdx)),
+                    Long.parseLong(plain.substring(separatorIdx + 1))
+            );
+        } catch (RuntimeException e) { //bad base64, missing separator or bad numbers
+            throw new IllegalArgumentException("invalid search cursor: " + token, e);
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.github.humbletrader.fmak.query;
 
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Map;
+
 public enum SqlOperators {
     EQ("eq", "="),
     NE("ne", "!="),
@@ -7,7 +12,9 @@ public enum SqlOperators {
     GTE("gte", ">="),
     LT("lt", "<"),
     LTE("lte", "<="),
-    ANY("any", "in");
+    ANY("any", "= any");
+
+    private static final Map<String, SqlOperators> JS_TO_OPERATOR = Maps.uniqueIndex(Arrays.asList(values()), SqlOperators::getJsOperator);
 
     private final String jsOperator;
     private final String sqlOperator;
@@ -25,12 +32,18 @@ public enum SqlOperators {
         return sqlOperator;
     }
 
+    /**
+     * @return  true for the comparisons (greater / lower than)
+     */
+    public boolean isRange(){
+        return this == GT || this == GTE || this == LT || this == LTE;
+    }
+
     public static SqlOperators forJs(String jsOperator){
-        for(SqlOperators operator : SqlOperators.values()){
-            if(operator.getJsOperator().equals(jsOperator)){
-                return operator;
-            }
+        SqlOperators result = jsOperator == null ? null : JS_TO_OPERATOR.get(jsOperator);
+        if(result == null){
+            throw new IllegalArgumentException("No operator found for js operator: " + jsOperator);
         }
-        throw new IllegalArgumentException("No operator found for js operator: " + jsOperator);
+        return result;
     }
 }
@@ -1,5 +1,27 @@
 package com.github.humbletrader.fmak.query;
 
+import java.util.Comparator;
+
 public enum SqlType {
-    INT_TYPE, VARCHAR_TYPE, DOUBLE_TYPE
+    INT_TYPE, VARCHAR_TYPE, DOUBLE_TYPE, BIGINT_TYPE, BOOLEAN_TYPE;
+
+    /**
+     * @return  true if the operator can be applied to a column of this type
+     */
+    public boolean supports(SqlOperators operator){
+        return this != BOOLEAN_TYPE || !operator.isRange();
+    }
+
+    /**
+     * @return  the order of the values of this type (as read from the db with getString, not null)
+     */
+    public Comparator<String> valueOrder(){
+        return switch (this){
+            case VARCHAR_TYPE -> Comparator.naturalOrder();
+            case INT_TYPE -> Comparator.comparingInt(Integer::parseInt);
+            case DOUBLE_TYPE -> Comparator.comparingDouble(Double::parseDouble);
+            case BIGINT_TYPE -> Comparator.comparingLong(Long::parseLong);
+            case BOOLEAN_TYPE -> Comparator.comparing(Boolean::parseBoolean);
+        };
+    }
 }
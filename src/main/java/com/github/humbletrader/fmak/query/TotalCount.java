@@ -0,0 +1,25 @@
+package com.github.humbletrader.fmak.query;
+
+/**
+ * the number of search results as shown to the user
+ *
+ * @param value the count
+ * @param precision how precise the count is
+ */
+public record TotalCount(long value, Precision precision) {
+
+    public enum Precision {
+        EXACT, AT_LEAST, ESTIMATE
+    }
+
+    /**
+     * @return  the count as displayed: "42", "1000+" or "~12000"
+     */
+    public String display(){
+        return switch (precision){
+            case EXACT -> Long.toString(value);
+            case AT_LEAST -> value + "+";
+            case ESTIMATE -> "~" + value;
+        };
+    }
+}
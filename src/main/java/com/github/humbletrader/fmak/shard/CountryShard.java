@@ -0,0 +1,55 @@
+package com.github.humbletrader.fmak.shard;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.jdbc.FmakQueryExecutor;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import com.github.humbletrader.fmak.query.SqlOperators;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * a catalog database holding only the shops of some countries
+ *
+ * @param name  the name of the shard (used in error messages)
+ * @param countries the countries of the shops stored in this shard
+ * @param executor  the executor of the statements against this shard
+ */
+public record CountryShard(String name, Set<String> countries, FmakQueryExecutor executor) {
+
+    public CountryShard {
+        if(countries.isEmpty()){
+            throw new IllegalArgumentException("the shard " + name + " should hold at least one country");
+        }
+        countries = Set.copyOf(countries);
+    }
+
+    /**
+     * @param countryFilter the filter on the country (null when the search is not filtered by country)
+     * @return  false only if none of the countries of this shard can match the filter
+     */
+    public boolean mayContain(FilterOpVal countryFilter){
+        if(countryFilter == null){
+            return true;
+        }
+        Set<String> candidates = new HashSet<>(countries);
+        Set<String> anyValues = null;
+        for(SearchValAndOp searchValAndOp : countryFilter.values()){
+            switch (SqlOperators.forJs(searchValAndOp.op())){
+                case EQ -> candidates.retainAll(Set.of(searchValAndOp.value()));
+                case NE -> candidates.remove(searchValAndOp.value());
+                case ANY -> {
+                    if(anyValues == null){
+                        anyValues = new HashSet<>();
+                    }
+                    anyValues.add(searchValAndOp.value());
+                }
+                default -> {} //ranges on country are unusual: the shard is not excluded
+            }
+        }
+        if(anyValues != null){
+            candidates.retainAll(anyValues);
+        }
+        return !candidates.isEmpty();
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.humbletrader.fmak.shard;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.jdbc.RowMapper;
+import com.github.humbletrader.fmak.jdbc.SearchRow;
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.SearchCursor;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * searches a catalog split by country in several databases (see {@link CountryShard}).
+ * The statements are sent only to the shards whose countries can match the country filter
+ * and are executed concurrently (one virtual thread per shard). Each shard returns its own first rows
+ * ordered by price and the global page is obtained by a k-way merge of these sorted lists.
+ *
+ * For the searches paginated with page and offset each shard has to return all the rows up to the end
+ * of the requested page (the shards cannot know how many rows the others contribute to the previous pages)
+ * so the keyset paginated search should be preferred for deep pages.
+ * The keyset paginated search assumes the ids of the product attributes are unique across all the shards
+ * (ie. allocated from disjoint ranges): the cursor does not know which shard its last row came from.
+ *
+ * This class is thread safe. Close it to stop its threads.
+ */
+public class ShardedSearch implements AutoCloseable {
+
+    private static final Comparator<SearchRow> BY_PRICE = Comparator.comparingDouble(SearchRow::price);
+    private static final Comparator<SearchRow> BY_PRICE_AND_ID = BY_PRICE.thenComparingLong(SearchRow::attributeId);
+
+    private final FmakSqlBuilder sqlBuilder;
+    private final List<CountryShard> shards;
+    private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param sqlBuilder    the builder of the statements (its rows per page is the size of the global page)
+     * @param shards    the shards of the catalog
+     */
+    public ShardedSearch(FmakSqlBuilder sqlBuilder, List<CountryShard> shards){
+        if(shards.isEmpty()){
+            throw new IllegalArgumentException("at least one shard is needed");
+        }
+        this.sqlBuilder = sqlBuilder;
+        this.shards = List.copyOf(shards);
+    }
+
+    /**
+     * @return  the shards which may hold rows matching the criteria
+     */
+    public List<CountryShard> route(SequencedSet<FilterOpVal> criteria){
+        FilterOpVal countryFilter = null;
+        for(FilterOpVal filterOpVal : criteria){
+            if(filterOpVal.filter() == SupportedFilter.country){
+                countryFilter = filterOpVal;
+            }
+        }
+        List<CountryShard> result = new ArrayList<>(shards.size());
+        for(CountryShard shard : shards){
+            if(shard.mayContain(countryFilter)){
+                result.add(shard);
+            }
+        }
+        return result;
+    }
+
+    public List<SearchRow> search(Map<String, SequencedSet<SearchValAndOp>> criteria, int page){
+        return search(sqlBuilder.webFiltersToInternalFilters(criteria), page);
+    }
+
+    /**
+     * @param criteria  the criteria
+     * @param page  the page (zero based)
+     * @return  the rows of the page plus one more row if there is a next page (same as the not sharded search)
+     */
+    public List<SearchRow> search(SequencedSet<FilterOpVal> criteria, int page){
+        if(page < 0){
+            throw new IllegalArgumentException("the page should not be negative but was " + page);
+        }
+        int rowsPerPage = sqlBuilder.rowsPerPage();
+        //each shard returns the top rows of all the pages up to the requested one (+1 to detect the next page)
+        FmakSqlBuilder shardBuilder = new FmakSqlBuilder(rowsPerPage * (page + 1),
+                sqlBuilder.statistics(), sqlBuilder.listener(), sqlBuilder.rollup());
+        var statement = shardBuilder.buildSearchSql(criteria, 0);
+        List<List<SearchRow>> rowsByShard = scatter(criteria,
+                shard -> shard.executor().list(statement, SearchRow.MAPPER));
+        return merge(rowsByShard, BY_PRICE, page * rowsPerPage, rowsPerPage + 1);
+    }
+
+    public List<SearchRow> search(Map<String, SequencedSet<SearchValAndOp>> criteria, SearchCursor after){
+        return search(sqlBuilder.webFiltersToInternalFilters(criteria), after);
+    }
+
+    /**
+     * keyset paginated search: every shard returns at most one page after the cursor
+     *
+     * @param criteria  the criteria
+     * @param after the cursor of the last row of the previous page (null for the first page)
+     * @return  the rows of the page plus one more row if there is a next page
+     */
+    public List<SearchRow> search(SequencedSet<FilterOpVal> criteria, SearchCursor after){
+        var statement = sqlBuilder.buildSearchSql(criteria, after);
+        List<List<SearchRow>> rowsByShard = scatter(criteria,
+                shard -> shard.executor().list(statement, SearchRow.KEYSET_MAPPER));
+        return merge(rowsByShard, BY_PRICE_AND_ID, 0, sqlBuilder.rowsPerPage() + 1);
+    }
+
+    public List<String> distinctValues(Map<String, SequencedSet<SearchValAndOp>> criteria, String column){
+        return distinctValues(sqlBuilder.webFiltersToInternalFilters(criteria), SupportedFilter.requireFilterFromName(column));
+    }
+
+    /**
+     * @return  the distinct values of the column in all the routed shards, without duplicates, in the java order
+     *          of the type of the column (see {@link com.github.humbletrader.fmak.query.SqlType#valueOrder()}) and nulls last.
+     *          For varchar columns this may differ from the order of the not sharded statement (which uses the db collation)
+     */
+    public List<String> distinctValues(SequencedSet<FilterOpVal> criteria, SupportedFilter distinctColumn){
+        var statement = sqlBuilder.buildDistinctValuesSql(criteria, distinctColumn);
+        List<List<String>> valuesByShard = scatter(criteria,
+                shard -> shard.executor().list(statement, RowMapper.firstColumnAsString()));
+        return mergeDistinct(valuesByShard, Comparator.nullsLast(distinctColumn.getColumn().sqlType().valueOrder()));
+    }
+
+    private <T> List<List<T>> scatter(SequencedSet<FilterOpVal> criteria, Function<CountryShard, List<T>> query){
+        List<CountryShard> routed = route(criteria);
+        if(routed.size() == 1){ //no need to switch threads
+            return List.of(query.apply(routed.getFirst()));
+        }
+        List<Future<List<T>>> futures = new ArrayList<>(routed.size());
+        for(CountryShard shard : routed){
+            futures.add(virtualThreads.submit(() -> query.apply(shard)));
+        }
+        List<List<T>> result = new ArrayList<>(routed.size());
+        try {
+            for(Future<List<T>> future : futures){
+                result.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(pending -> pending.cancel(true));
+            throw e.getCause() instanceof RuntimeException runtimeException ?
+                    runtimeException : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(pending -> pending.cancel(true));
+            throw new IllegalStateException("interrupted while waiting for the shards", e);
+        }
+        return result;
+    }
+
+    /**
+     * k-way merge of lists sorted by the same order (the equal elements are taken in the order of their lists)
+     *
+     * @param sortedLists   the sorted lists
+     * @param order the order of the elements in each list
+     * @param skip  the number of elements of the merged list to skip
+     * @param limit the maximum number of elements returned
+     * @return  the elements of the merged list between skip and skip + limit
+     */
+    static <T> List<T> merge(List<List<T>> sortedLists, Comparator<? super T> order, int skip, int limit){
+        //each entry is the index of a list and the position of its next element
+        Comparator<int[]> headOrder = (first, second) ->
+                order.compare(sortedLists.get(first[0]).get(first[1]), sortedLists.get(second[0]).get(second[1]));
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                headOrder.thenComparingInt(head -> head[0]));
+        for(int i = 0; i < sortedLists.size(); i++){
+            if(!sortedLists.get(i).isEmpty()){
+                heads.add(new int[]{i, 0});
+            }
+        }
+        int total = 0;
+        for(List<T> sortedList : sortedLists){
+            total += sortedList.size();
+        }
+        List<T> result = new ArrayList<>(Math.max(0, Math.min(limit, total - skip)));
+        int position = 0;
+        while(!heads.isEmpty() && result.size() < limit){
+            int[] head = heads.poll();
+            List<T> list = sortedLists.get(head[0]);
+            if(position++ >= skip){
+                result.add(list.get(head[1]));
+            }
+            if(++head[1] < list.size()){
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * merges the distinct values of several shards removing the duplicates.
+     * The values are sorted again because each shard sorts them by the collation of its db, which is not the java order
+     */
+    static List<String> mergeDistinct(List<List<String>> valuesByShard, Comparator<String> order){
+        Set<String> distinct = new HashSet<>();
+        for(List<String> values : valuesByShard){
+            distinct.addAll(values);
+        }
+        List<String> result = new ArrayList<>(distinct);
+        result.sort(order);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        virtualThreads.shutdownNow();
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.humbletrader.fmak.stats;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+
+/**
+ * statistics about the data in the db used by the sql builder to plan the statements
+ * (the order of the conditions in the where clause)
+ */
+public interface ColumnStatistics {
+
+    /**
+     * @param filter    the filter with all its values and operators
+     * @return  the estimated fraction (between 0 and 1) of the rows matching all the conditions of the filter
+     */
+    double selectivity(FilterOpVal filter);
+
+    /**
+     * @return  the statistics derived from the static priorities declared in
+     * {@link com.github.humbletrader.fmak.criteria.SupportedFilter} (no data about the db)
+     */
+    static ColumnStatistics fromPriorities(){
+        return PriorityStatistics.INSTANCE;
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.humbletrader.fmak.stats;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+
+/**
+ * the statistics used when nothing is known about the data: the higher the priority
+ * of a filter in the where clause, the more selective the filter is considered
+ */
+enum PriorityStatistics implements ColumnStatistics {
+    INSTANCE;
+
+    @Override
+    public double selectivity(FilterOpVal filter) {
+        return 1.0 / filter.filter().getPriorityInSqlWhereClause();
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.humbletrader.fmak.stats;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.query.FmakColumn;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import com.github.humbletrader.fmak.query.SqlOperators;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * statistics loaded from a snapshot (a properties file) usually generated periodically from the db.
+ * The columns are identified by their prefixed name (ie. p.brand, s.country, a.price):
+ * <pre>
+ * # fraction of the rows having one given value of the column
+ * p.brand.selectivity=0.02
+ * # or the number of distinct values of the column (uniform distribution assumed)
+ * p.product_name.cardinality=3500
+ * # values much more frequent than the others (skew)
+ * p.brand.value.DUOTONE=0.4
+ * # fraction of the rows kept by a range condition (gt, gte, lt, lte) on any column
+ * range.selectivity=0.3
+ * # selectivity of the columns not present in the snapshot
+ * default.selectivity=0.1
+ * </pre>
+ */
+public class SnapshotColumnStatistics implements ColumnStatistics {
+
+    private static final String SELECTIVITY_SUFFIX = ".selectivity";
+    private static final String CARDINALITY_SUFFIX = ".cardinality";
+    private static final String VALUE_INFIX = ".value.";
+
+    private final Map<String, Double> columnSelectivity;
+    private final Map<String, Double> valueSelectivity; //key = prefixed column + VALUE_INFIX + value
+    private final double rangeSelectivity;
+    private final double defaultSelectivity;
+
+    public SnapshotColumnStatistics(Map<String, Double> columnSelectivity,
+                                    Map<String, Double> valueSelectivity,
+                                    double rangeSelectivity,
+                                    double defaultSelectivity){
+        this.columnSelectivity = Map.copyOf(columnSelectivity);
+        this.valueSelectivity = Map.copyOf(valueSelectivity);
+        this.rangeSelectivity = rangeSelectivity;
+        this.defaultSelectivity = defaultSelectivity;
+    }
+
+    public static SnapshotColumnStatistics load(Path snapshotFile) throws IOException {
+        try(InputStream input = Files.newInputStream(snapshotFile)){
+            return load(input);
+        }
+    }
+
+    public static SnapshotColumnStatistics load(InputStream snapshot) throws IOException {
+        Properties properties = new Properties();
+        properties.load(snapshot);
+
+        Map<String, Double> columnSelectivity = new HashMap<>();
+        Map<String, Double> valueSelectivity = new HashMap<>();
+        for(String key : properties.stringPropertyNames()){
+            String value = properties.getProperty(key).trim();
+            if(key.contains(VALUE_INFIX)){
+                valueSelectivity.put(key, Double.valueOf(value));
+            } else if(key.endsWith(CARDINALITY_SUFFIX)){
+                columnSelectivity.put(key.substring(0, key.length() - CARDINALITY_SUFFIX.length()), 1.0 / Double.parseDouble(value));
+            } else if(key.endsWith(SELECTIVITY_SUFFIX) && !key.equals("range.selectivity") && !key.equals("default.selectivity")){
+                columnSelectivity.put(key.substring(0, key.length() - SELECTIVITY_SUFFIX.length()), Double.valueOf(value));
+            }
+        }
+        return new SnapshotColumnStatistics(
+                columnSelectivity,
+                valueSelectivity,
+                Double.parseDouble(properties.getProperty("range.selectivity", "0.3")),
+                Double.parseDouble(properties.getProperty("default.selectivity", "0.1"))
+        );
+    }
+
+    /**
+     * the conditions of a filter are and-ed, except for the 'any' values which are or-ed
+     */
+    @Override
+    public double selectivity(FilterOpVal filter) {
+        FmakColumn column = filter.filter().getColumn();
+        double result = 1.0;
+        double anySelectivity = 0.0;
+        boolean hasAny = false;
+        for(SearchValAndOp searchValAndOp : filter.values()){
+            switch (SqlOperators.forJs(searchValAndOp.op())){
+                case EQ -> result *= valueSelectivity(column, searchValAndOp.value());
+                case NE -> result *= 1.0 - valueSelectivity(column, searchValAndOp.value());
+                case GT, GTE, LT, LTE -> result *= rangeSelectivity;
+                case ANY -> {
+                    hasAny = true;
+                    anySelectivity += valueSelectivity(column, searchValAndOp.value());
+                }
+            }
+        }
+        return hasAny ? result * Math.min(1.0, anySelectivity) : result;
+    }
+
+    private double valueSelectivity(FmakColumn column, String value){
+        String prefixedColumn = column.prefixedColumnName();
+        Double result = valueSelectivity.get(prefixedColumn + VALUE_INFIX + value);
+        if(result == null){
+            result = columnSelectivity.getOrDefault(prefixedColumn, defaultSelectivity);
+        }
+        return result;
+    }
+}
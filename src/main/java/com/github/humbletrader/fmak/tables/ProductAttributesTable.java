@@ -4,13 +4,16 @@ import com.github.humbletrader.fmak.query.FmakColumn;
 import com.github.humbletrader.fmak.query.FmakTable;
 import com.github.humbletrader.fmak.query.SqlType;
 
+import static com.github.humbletrader.fmak.query.SqlType.BIGINT_TYPE;
 import static com.github.humbletrader.fmak.query.SqlType.DOUBLE_TYPE;
 import static com.github.humbletrader.fmak.query.SqlType.VARCHAR_TYPE;
 
 public enum ProductAttributesTable implements FmakColumn {
 
     price("price", DOUBLE_TYPE),
-    size("size", VARCHAR_TYPE)
+    size("size", VARCHAR_TYPE),
+    id("id", BIGINT_TYPE),
+    product_id("product_id", BIGINT_TYPE)
     ;
 
     private final String colName;
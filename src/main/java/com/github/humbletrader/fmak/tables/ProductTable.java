@@ -4,6 +4,8 @@ import com.github.humbletrader.fmak.query.FmakColumn;
 import com.github.humbletrader.fmak.query.FmakTable;
 import com.github.humbletrader.fmak.query.SqlType;
 
+import static com.github.humbletrader.fmak.query.SqlType.BIGINT_TYPE;
+import static com.github.humbletrader.fmak.query.SqlType.BOOLEAN_TYPE;
 import static com.github.humbletrader.fmak.query.SqlType.INT_TYPE;
 import static com.github.humbletrader.fmak.query.SqlType.VARCHAR_TYPE;
 
@@ -17,7 +19,11 @@ public enum ProductTable implements FmakColumn {
     category("category", VARCHAR_TYPE),
     condition("condition", VARCHAR_TYPE),
     subprod_name("subprod_name", VARCHAR_TYPE),
-    construction_tech("construction_tech", VARCHAR_TYPE);
+    construction_tech("construction_tech", VARCHAR_TYPE),
+    brand_name_version("brand_name_version", VARCHAR_TYPE),
+    visible_to_public("visible_to_public", BOOLEAN_TYPE),
+    id("id", BIGINT_TYPE),
+    shop_id("shop_id", BIGINT_TYPE);
 
     private final String colName;
     private final SqlType sqlType;
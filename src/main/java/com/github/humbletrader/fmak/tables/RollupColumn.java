@@ -0,0 +1,28 @@
+package com.github.humbletrader.fmak.tables;
+
+import com.github.humbletrader.fmak.query.FmakColumn;
+import com.github.humbletrader.fmak.query.FmakTable;
+import com.github.humbletrader.fmak.query.SqlType;
+
+/**
+ * a column of the facet rollup: a copy of a column of the base tables
+ *
+ * @param source    the column of the base table
+ */
+public record RollupColumn(FmakColumn source) implements FmakColumn {
+
+    @Override
+    public String colName() {
+        return source.colName();
+    }
+
+    @Override
+    public SqlType sqlType() {
+        return source.sqlType();
+    }
+
+    @Override
+    public FmakTable table() {
+        return FmakTable.FACET_ROLLUP;
+    }
+}
@@ -4,11 +4,13 @@ import com.github.humbletrader.fmak.query.FmakColumn;
 import com.github.humbletrader.fmak.query.FmakTable;
 import com.github.humbletrader.fmak.query.SqlType;
 
+import static com.github.humbletrader.fmak.query.SqlType.BIGINT_TYPE;
 import static com.github.humbletrader.fmak.query.SqlType.VARCHAR_TYPE;
 
 public enum ShopTable implements FmakColumn {
 
-    country("country", VARCHAR_TYPE);
+    country("country", VARCHAR_TYPE),
+    id("id", BIGINT_TYPE);
 
     private final String colName;
     private final SqlType sqlType;
@@ -0,0 +1,125 @@
+package com.github.humbletrader.fmak.advisor;
+
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.Projection;
+import com.github.humbletrader.fmak.query.RollupDefinition;
+import com.github.humbletrader.fmak.query.SearchCursor;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import com.github.humbletrader.fmak.tables.ProductTable;
+import com.github.humbletrader.fmak.stats.ColumnStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IndexAdvisorTest {
+
+    private final IndexAdvisor underTest = new IndexAdvisor();
+    private final FmakSqlBuilder sqlBuilder = new FmakSqlBuilder(20, ColumnStatistics.fromPriorities(), underTest);
+
+    @Test
+    public void indexesAreMergedAndRankedByFrequency(){
+        Map<String, SequencedSet<SearchValAndOp>> searchFilters = new HashMap<>();
+        searchFilters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        searchFilters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "any"), new SearchValAndOp("NORTH", "any"))));
+        for(int page = 0; page < 3; page++){
+            sqlBuilder.buildSearchSqlForWebFilters(searchFilters, page);
+        }
+
+        Map<String, SequencedSet<SearchValAndOp>> distinctFilters = new HashMap<>();
+        distinctFilters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("BOARDS", "eq"))));
+        distinctFilters.put("price", new LinkedHashSet<>(List.of(new SearchValAndOp("500", "lt"))));
+        sqlBuilder.buildDistinctValuesSql(distinctFilters, "size");
+
+        List<IndexRecommendation> result = underTest.recommendations();
+        assertEquals(3, result.size());
+        assertEquals(
+                "create index if not exists idx_product_attributes_product_id_price on product_attributes (product_id, price) include (size)",
+                result.get(0).toDdl()
+        );
+        assertEquals(4, result.get(0).frequency());
+        assertEquals(
+                "create index if not exists idx_products_category_brand on products (category, brand) include (brand_name_version, link, condition, visible_to_public, id)",
+                result.get(1).toDdl()
+        );
+        assertEquals(3, result.get(1).frequency());
+        assertEquals(
+                "create index if not exists idx_products_category on products (category) include (id)",
+                result.get(2).toDdl()
+        );
+    }
+
+    @Test
+    public void filteredShopsLeadToTheProducts(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        filters.put("year", new LinkedHashSet<>(List.of(new SearchValAndOp("2020", "gte"))));
+        sqlBuilder.buildDistinctValuesSql(filters, "brand");
+
+        assertEquals(
+                "create index if not exists idx_shops_country on shops (country) include (id); -- used by 1 statements\n" +
+                "create index if not exists idx_products_shop_id_year on products (shop_id, year) include (brand); -- used by 1 statements",
+                underTest.ddl()
+        );
+    }
+
+    @Test
+    public void distinctValuesAnsweredByTheRollupNeedNoIndex(){
+        RollupDefinition rollup = RollupDefinition.of(SupportedFilter.country, SupportedFilter.brand, SupportedFilter.year);
+        IndexAdvisor advisor = new IndexAdvisor(rollup);
+        FmakSqlBuilder rollupSqlBuilder = new FmakSqlBuilder(20, ColumnStatistics.fromPriorities(), advisor);
+
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        filters.put("year", new LinkedHashSet<>(List.of(new SearchValAndOp("2020", "gte"))));
+        rollupSqlBuilder.buildDistinctValuesSql(filters, "brand");
+        assertEquals("", advisor.ddl());
+
+        rollupSqlBuilder.buildDistinctValuesSql(filters, "size");
+        assertEquals(
+                "create index if not exists idx_shops_country on shops (country) include (id); -- used by 1 statements\n" +
+                "create index if not exists idx_products_shop_id_year on products (shop_id, year) include (id); -- used by 1 statements\n" +
+                "create index if not exists idx_product_attributes_product_id on product_attributes (product_id) include (size); -- used by 1 statements",
+                advisor.ddl()
+        );
+    }
+
+    @Test
+    public void autocompleteSeeksTheLowerCasePrefix(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        sqlBuilder.buildAutocompleteSql(filters, "brand", "co", 10);
+
+        assertEquals(
+                "create index if not exists idx_products_category_lower_brand_collate_c on products (category, (lower(brand) collate \"C\")) include (brand); -- used by 1 statements",
+                underTest.ddl()
+        );
+    }
+
+    @Test
+    public void searchesCoverOnlyTheColumnsOfTheirProjection(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        sqlBuilder.buildSearchSqlForWebFilters(filters, Projection.of(ProductTable.id, ProductTable.link), 0);
+
+        assertEquals(
+                "create index if not exists idx_products_category on products (category) include (id, link); -- used by 1 statements",
+                underTest.ddl()
+        );
+    }
+
+    @Test
+    public void keysetSearchesCoverTheAttributeId(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        sqlBuilder.buildSearchSqlForWebFilters(filters, (SearchCursor) null);
+
+        assertEquals(
+                "create index if not exists idx_products_category on products (category) include (brand_name_version, link, condition, visible_to_public, id); -- used by 1 statements\n" +
+                "create index if not exists idx_product_attributes_product_id_price on product_attributes (product_id, price) include (size, id); -- used by 1 statements",
+                underTest.ddl()
+        );
+    }
+}
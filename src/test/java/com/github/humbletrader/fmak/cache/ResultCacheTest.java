@@ -0,0 +1,135 @@
+package com.github.humbletrader.fmak.cache;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.FmakTable;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ResultCacheTest {
+
+    private final FmakSqlBuilder sqlBuilder = new FmakSqlBuilder(20);
+    private final ResultCache underTest = new ResultCache(sqlBuilder, null, 100, Duration.ofMinutes(5));
+
+    private static FilterOpVal filter(SupportedFilter filter, SearchValAndOp... values){
+        return new FilterOpVal(filter, new LinkedHashSet<>(List.of(values)));
+    }
+
+    @Test
+    public void logicallyIdenticalCriteriaHaveTheSameKey(){
+        SequencedSet<FilterOpVal> first = new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.country, new SearchValAndOp("EU", "eq")),
+                filter(SupportedFilter.brand, new SearchValAndOp("CORE", "any"), new SearchValAndOp("NORTH", "any"))
+        ));
+        SequencedSet<FilterOpVal> second = new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.brand, new SearchValAndOp("NORTH", "any"), new SearchValAndOp("CORE", "any")),
+                filter(SupportedFilter.country, new SearchValAndOp("EU", "eq"))
+        ));
+
+        assertEquals(ResultKey.search(first, 2), ResultKey.search(second, 2));
+        assertEquals(ResultKey.distinct(first, SupportedFilter.size), ResultKey.distinct(second, SupportedFilter.size));
+        assertNotEquals(ResultKey.search(first, 2), ResultKey.search(second, 3));
+        assertNotEquals(ResultKey.distinct(first, SupportedFilter.size), ResultKey.distinct(second, SupportedFilter.year));
+    }
+
+    @Test
+    public void webFiltersInAnyOrderHitTheCache(){
+        Map<String, SequencedSet<SearchValAndOp>> first = new LinkedHashMap<>();
+        first.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        first.put("price", new LinkedHashSet<>(List.of(new SearchValAndOp("500", "gt"), new SearchValAndOp("1000", "lt"))));
+        Map<String, SequencedSet<SearchValAndOp>> second = new LinkedHashMap<>();
+        second.put("price", new LinkedHashSet<>(List.of(new SearchValAndOp("1000", "lt"), new SearchValAndOp("500", "gt"))));
+        second.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+
+        List<String> firstResult = underTest.getOrLoad(ResultKey.search(sqlBuilder.webFiltersToInternalFilters(first), 0), () -> List.of("loaded"));
+        List<String> secondResult = underTest.getOrLoad(ResultKey.search(sqlBuilder.webFiltersToInternalFilters(second), 0), () -> List.of("loaded again"));
+
+        assertEquals(List.of("loaded"), secondResult);
+        assertEquals(firstResult, secondResult);
+        assertEquals(1, underTest.stats().hitCount());
+        assertEquals(0.5, underTest.stats().hitRate());
+    }
+
+    @Test
+    public void invalidatingATableEvictsOnlyTheResultsReadingIt(){
+        SequencedSet<FilterOpVal> productFilters = new LinkedHashSet<>(List.of(filter(SupportedFilter.category, new SearchValAndOp("KITES", "eq"))));
+        SequencedSet<FilterOpVal> shopFilters = new LinkedHashSet<>(List.of(filter(SupportedFilter.country, new SearchValAndOp("EU", "eq"))));
+        underTest.getOrLoad(ResultKey.distinct(productFilters, SupportedFilter.brand), () -> List.of("CORE"));
+        underTest.getOrLoad(ResultKey.distinct(shopFilters, SupportedFilter.brand), () -> List.of("NORTH"));
+        underTest.getOrLoad(ResultKey.search(productFilters, 0), () -> List.of());
+
+        underTest.invalidate(FmakTable.SHOPS);
+        assertEquals(2, underTest.size());
+
+        underTest.invalidate(FmakTable.PRODUCT_ATTRIBUTES);
+        assertEquals(1, underTest.size());
+
+        underTest.invalidate(FmakTable.PRODUCTS);
+        assertEquals(0, underTest.size());
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        ResultKey key = ResultKey.search(new LinkedHashSet<>(), 0);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        try(ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()){
+            Future<List<String>> first = threads.submit(() -> underTest.getOrLoad(key, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                awaitQuietly(release);
+                return List.of("loaded");
+            }));
+            loading.await();
+            Future<List<String>> second = threads.submit(() -> underTest.getOrLoad(key, () -> {
+                loads.incrementAndGet();
+                return List.of("loaded again");
+            }));
+            Thread.sleep(100); //let the second request wait for the first load
+            release.countDown();
+
+            assertEquals(List.of("loaded"), first.get(5, TimeUnit.SECONDS));
+            assertEquals(List.of("loaded"), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        }
+    }
+
+    @Test
+    public void loadOverlappingAnInvalidationIsNotCached() throws Exception {
+        ResultKey key = ResultKey.distinct(new LinkedHashSet<>(), SupportedFilter.brand);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try(ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()){
+            Future<List<String>> staleLoad = threads.submit(() -> underTest.getOrLoad(key, () -> {
+                loading.countDown();
+                awaitQuietly(release);
+                return List.of("OLD BRAND");
+            }));
+            loading.await();
+            underTest.invalidate(FmakTable.PRODUCTS); //the products change while they are read
+            release.countDown();
+
+            assertEquals(List.of("OLD BRAND"), staleLoad.get(5, TimeUnit.SECONDS));
+            assertEquals(0, underTest.size());
+            assertEquals(List.of("NEW BRAND"), underTest.getOrLoad(key, () -> List.of("NEW BRAND")));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.humbletrader.fmak.index;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FacetIndexTest {
+
+    private final FacetIndex underTest = new FacetIndex.Builder()
+            .addRow(row("EU", "KITES", "CORE", "2022", "9", "1000"), true)
+            .addRow(row("EU", "KITES", "CORE", "2022", "12", "1100"), true)
+            .addRow(row("EU", "KITES", "NORTH", "2023", "12", "900"), true)
+            .addRow(row("UK", "KITES", "OZONE", "-1", "10", "800"), true)
+            .addRow(row("UK", "BOARDS", "CORE", "2021", "136", "500"), true)
+            .addRow(row("EU", "KITES", "DUOTONE", "2024", null, null), false)
+            .build();
+
+    private static Map<SupportedFilter, String> row(String country, String category, String brand,
+                                                    String year, String size, String price){
+        Map<SupportedFilter, String> result = new EnumMap<>(SupportedFilter.class);
+        result.put(SupportedFilter.country, country);
+        result.put(SupportedFilter.category, category);
+        result.put(SupportedFilter.brand, brand);
+        result.put(SupportedFilter.year, year);
+        result.put(SupportedFilter.size, size);
+        result.put(SupportedFilter.price, price);
+        return result;
+    }
+
+    private static FilterOpVal filter(SupportedFilter filter, SearchValAndOp... values){
+        return new FilterOpVal(filter, new LinkedHashSet<>(List.of(values)));
+    }
+
+    @Test
+    public void distinctProductValuesIncludeProductsWithoutAttributes(){
+        SequencedSet<FilterOpVal> criteria = new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.country, new SearchValAndOp("EU", "eq")),
+                filter(SupportedFilter.category, new SearchValAndOp("KITES", "eq"))
+        ));
+
+        assertEquals(List.of("CORE", "DUOTONE", "NORTH"), underTest.distinctValues(criteria, SupportedFilter.brand));
+    }
+
+    @Test
+    public void attributeConditionsMatchTheSameAttributeRow(){
+        SequencedSet<FilterOpVal> criteria = new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.size, new SearchValAndOp("12", "eq")),
+                filter(SupportedFilter.price, new SearchValAndOp("1000", "gte"))
+        ));
+
+        assertEquals(List.of("CORE"), underTest.distinctValues(criteria, SupportedFilter.brand));
+        assertEquals(List.of("12"), underTest.distinctValues(criteria, SupportedFilter.size));
+    }
+
+    @Test
+    public void rangesUseTheTypeOfTheColumn(){
+        SequencedSet<FilterOpVal> criteria = new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.price, new SearchValAndOp("800", "gt"), new SearchValAndOp("1000", "lte"))
+        ));
+
+        assertEquals(List.of("900", "1000"), underTest.distinctValues(criteria, SupportedFilter.price));
+        assertEquals(List.of("CORE", "NORTH"), underTest.distinctValues(criteria, SupportedFilter.brand));
+    }
+
+    @Test
+    public void anyValuesAreOrEdAndForbiddenValuesExcluded(){
+        SequencedSet<FilterOpVal> criteria = new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.brand, new SearchValAndOp("OZONE", "any"), new SearchValAndOp("NORTH", "any"))
+        ));
+
+        assertEquals(List.of("2023"), underTest.distinctValues(criteria, SupportedFilter.year));
+        assertEquals(List.of("10", "12"), underTest.distinctValues(criteria, SupportedFilter.size));
+    }
+
+    @Test
+    public void notEqualsSkipsNullValues(){
+        SequencedSet<FilterOpVal> criteria = new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.size, new SearchValAndOp("12", "ne"))
+        ));
+
+        assertEquals(List.of("CORE", "OZONE"), underTest.distinctValues(criteria, SupportedFilter.brand));
+    }
+
+    @Test
+    public void nullsFollowTheSqlSemantics(){
+        FacetIndex withNulls = new FacetIndex.Builder()
+                .addRow(row("EU", "KITES", "CORE", null, "9", "1000"), true)
+                .addRow(row("EU", "KITES", null, "2023", "12", "900"), true)
+                .addRow(row("UK", "KITES", "NORTH", "2024", "12", "800"), true)
+                .build();
+        SequencedSet<FilterOpVal> kites = new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.category, new SearchValAndOp("KITES", "eq"))
+        ));
+
+        assertEquals(Arrays.asList("CORE", "NORTH", null), withNulls.distinctValues(kites, SupportedFilter.brand));
+        assertEquals(List.of("2023", "2024"), withNulls.distinctValues(kites, SupportedFilter.year)); //year <> -1 excludes null
+        assertEquals(List.of("12"), withNulls.distinctValues(new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.year, new SearchValAndOp("2025", "lt"), new SearchValAndOp("2023", "ne"))
+        )), SupportedFilter.size));
+        assertEquals(List.of("NORTH"), withNulls.distinctValues(new LinkedHashSet<>(List.of(
+                filter(SupportedFilter.brand, new SearchValAndOp("CORE", "ne"))
+        )), SupportedFilter.brand));
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacetFanOutTest {
+
+    private final FmakSqlBuilder sqlBuilder = new FmakSqlBuilder(20);
+
+    @Test
+    public void allFacetsAreLoadedConcurrently() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR,VALUE");
+        try(Connection keepDbAlive = dataSource.getConnection();
+            FacetFanOut underTest = new FacetFanOut(sqlBuilder, new FmakQueryExecutor(dataSource), 2)){
+            TestCatalog.create(keepDbAlive);
+
+            Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+            filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+            SequencedSet<SupportedFilter> facets = new LinkedHashSet<>(List.of(SupportedFilter.brand, SupportedFilter.country, SupportedFilter.size));
+
+            FacetResults result = underTest.distinctValues(filters, facets, Duration.ofSeconds(10));
+
+            assertTrue(result.complete());
+            assertEquals(List.of(SupportedFilter.brand, SupportedFilter.country, SupportedFilter.size), List.copyOf(result.valuesByFacet().keySet()));
+            assertEquals(List.of("CORE", "DUOTONE", "NORTH"), result.valuesOf(SupportedFilter.brand));
+            assertEquals(List.of("EU", "UK", "US"), result.valuesOf(SupportedFilter.country));
+            assertEquals(List.of("10", "12", "14", "9"), result.valuesOf(SupportedFilter.size));
+        }
+    }
+
+    @Test
+    public void slowFacetsAreReportedAsTimedOut(){
+        DataSource neverConnects = (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if(method.getName().equals("getConnection")){
+                        Thread.sleep(60_000);
+                    }
+                    throw new SQLException("not connected");
+                }
+        );
+        try(FacetFanOut underTest = new FacetFanOut(sqlBuilder, new FmakQueryExecutor(neverConnects), 1)){
+            SequencedSet<SupportedFilter> facets = new LinkedHashSet<>(List.of(SupportedFilter.brand, SupportedFilter.year));
+
+            long start = System.nanoTime();
+            FacetResults result = underTest.distinctValues(new HashMap<>(), facets, Duration.ofMillis(200));
+
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+            assertFalse(result.complete());
+            assertEquals(Set.of(SupportedFilter.brand, SupportedFilter.year), result.timedOut());
+            assertTrue(result.valuesByFacet().isEmpty());
+        }
+    }
+
+    @Test
+    public void interruptedRequestsReturnPartialResults(){
+        DataSource neverConnects = (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if(method.getName().equals("getConnection")){
+                        Thread.sleep(60_000);
+                    }
+                    throw new SQLException("not connected");
+                }
+        );
+        try(FacetFanOut underTest = new FacetFanOut(sqlBuilder, new FmakQueryExecutor(neverConnects), 2)){
+            SequencedSet<SupportedFilter> facets = new LinkedHashSet<>(List.of(SupportedFilter.brand, SupportedFilter.year, SupportedFilter.size));
+
+            Thread.currentThread().interrupt();
+            FacetResults result = underTest.distinctValues(new HashMap<>(), facets, Duration.ofSeconds(30));
+
+            assertTrue(Thread.interrupted()); //the interrupt is kept for the caller
+            assertFalse(result.complete());
+            assertEquals(Set.of(SupportedFilter.brand, SupportedFilter.year, SupportedFilter.size), result.timedOut());
+            assertTrue(result.valuesByFacet().isEmpty());
+        }
+    }
+
+    @Test
+    public void timedOutStatementsAreCancelledInTheDb() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AtomicInteger queryTimeout = new AtomicInteger(-1);
+        PreparedStatement blockingStatement = (PreparedStatement) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> switch (method.getName()){
+                    case "setQueryTimeout" -> { queryTimeout.set((Integer) args[0]); yield null; }
+                    case "executeQuery" -> { //like a socket read: ignores the interrupts, only the cancel stops it
+                        while(cancelled.getCount() > 0){
+                            try {
+                                cancelled.await();
+                            } catch (InterruptedException ignored) {
+                                //keep waiting
+                            }
+                        }
+                        throw new SQLException("canceling statement due to user request");
+                    }
+                    case "cancel" -> { cancelled.countDown(); yield null; }
+                    case "isClosed" -> false;
+                    default -> null;
+                }
+        );
+        Connection connection = (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> switch (method.getName()){
+                    case "prepareStatement" -> blockingStatement;
+                    case "getAutoCommit" -> true;
+                    default -> null;
+                }
+        );
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> method.getName().equals("getConnection") ? connection : null
+        );
+        try(FacetFanOut underTest = new FacetFanOut(sqlBuilder, new FmakQueryExecutor(dataSource), 1)){
+            FacetResults result = underTest.distinctValues(new HashMap<>(), new LinkedHashSet<>(List.of(SupportedFilter.brand)), Duration.ofMillis(300));
+
+            assertEquals(Set.of(SupportedFilter.brand), result.timedOut());
+            assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+            assertEquals(1, queryTimeout.get());
+        }
+    }
+}
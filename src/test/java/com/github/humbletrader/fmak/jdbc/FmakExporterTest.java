@@ -0,0 +1,65 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import com.github.humbletrader.fmak.tables.ProductAttributesTable;
+import com.github.humbletrader.fmak.tables.ProductTable;
+import com.github.humbletrader.fmak.tables.ShopTable;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FmakExporterTest {
+
+    @Test
+    public void csvAndNdjsonEscapeTheirValues() throws IOException {
+        List<String> columns = List.of("brand_name_version", "year", "price");
+        Object[] values = {"CORE \"XR\", V7", null, 999.5};
+
+        StringWriter csv = new StringWriter();
+        ExportFormat.CSV.writeHeader(csv, columns);
+        ExportFormat.CSV.writeRow(csv, columns, values);
+        assertEquals("brand_name_version,year,price\n\"CORE \"\"XR\"\", V7\",,999.5\n", csv.toString());
+
+        StringWriter ndjson = new StringWriter();
+        ExportFormat.NDJSON.writeHeader(ndjson, columns);
+        ExportFormat.NDJSON.writeRow(ndjson, columns, values);
+        assertEquals("{\"brand_name_version\":\"CORE \\\"XR\\\", V7\",\"year\":null,\"price\":999.5}\n", ndjson.toString());
+    }
+
+    @Test
+    public void theWholeSelectionIsStreamedInOneStatement() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR,VALUE");
+        try(Connection keepDbAlive = dataSource.getConnection()){
+            TestCatalog.create(keepDbAlive);
+            FmakExporter underTest = new FmakExporter(new FmakQueryExecutor(dataSource, 2, 8));
+
+            Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+            filters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "eq"))));
+            var query = new FmakSqlBuilder(2).buildExportSqlForWebFilters(filters,
+                    List.of(ProductTable.brand_name_version, ShopTable.country, ProductAttributesTable.price, ProductAttributesTable.size));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long rows = underTest.export(query, ExportFormat.CSV, out);
+
+            assertEquals(3, rows); //more than the fetch size and the rows per page
+            assertEquals(
+                    "brand_name_version,country,price,size\n" +
+                    "CORE XR V7,EU,900.0,10\n" +
+                    "CORE XR V7,EU,950.0,14\n" +
+                    "CORE CARBON V2,US,1100.0,12\n",
+                    out.toString(StandardCharsets.UTF_8)
+            );
+        }
+    }
+}
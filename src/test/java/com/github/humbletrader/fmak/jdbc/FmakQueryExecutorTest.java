@@ -0,0 +1,107 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.SearchCursor;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FmakQueryExecutorTest {
+
+    private final FmakSqlBuilder sqlBuilder = new FmakSqlBuilder(2);
+    private JdbcDataSource dataSource;
+    private Connection keepDbAlive;
+    private FmakQueryExecutor underTest;
+
+    @BeforeEach
+    public void createDb() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR,VALUE");
+        keepDbAlive = dataSource.getConnection();
+        TestCatalog.create(keepDbAlive);
+        underTest = new FmakQueryExecutor(dataSource, 10, 8);
+    }
+
+    @AfterEach
+    public void dropDb() throws SQLException {
+        keepDbAlive.close();
+    }
+
+    @Test
+    public void searchRowsAreStreamedInPriceOrder(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+
+        try(Stream<SearchRow> rows = underTest.stream(sqlBuilder.buildSearchSqlForWebFilters(filters, 0), SearchRow.MAPPER)){
+            assertEquals(
+                    List.of(900.0, 950.0, 1000.0), //rowsPerPage + 1 rows
+                    rows.map(SearchRow::price).toList()
+            );
+        }
+    }
+
+    @Test
+    public void sessionsReadInATransactionSoThatTheRowsAreFetchedInBatches() throws SQLException {
+        try(FmakSession session = underTest.openSession()){
+            assertFalse(session.connection().getAutoCommit());
+        }
+        try(Connection connection = dataSource.getConnection()){
+            assertTrue(connection.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void keysetPagesFollowEachOther(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+
+        try(FmakSession session = underTest.openSession()){
+            List<SearchRow> firstPage = session.list(sqlBuilder.buildSearchSqlForWebFilters(filters, (SearchCursor) null), SearchRow.KEYSET_MAPPER);
+            assertEquals(List.of(900.0, 950.0, 1000.0), firstPage.stream().map(SearchRow::price).toList());
+
+            List<SearchRow> secondPage = session.list(sqlBuilder.buildSearchSqlForWebFilters(filters, firstPage.get(1).cursor()), SearchRow.KEYSET_MAPPER);
+            assertEquals(List.of(1000.0, 1000.0, 1100.0), secondPage.stream().map(SearchRow::price).toList());
+
+            assertEquals(2, session.cachedStatements()); //the first page has no cursor condition
+
+            session.list(sqlBuilder.buildSearchSqlForWebFilters(filters, secondPage.get(1).cursor()), SearchRow.KEYSET_MAPPER);
+            assertEquals(2, session.cachedStatements()); //the pages after the first one reuse the same statement
+        }
+    }
+
+    @Test
+    public void distinctValuesWithAnyAndAttributeFilters(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("NORTH", "any"), new SearchValAndOp("CORE", "any"))));
+        filters.put("size", new LinkedHashSet<>(List.of(new SearchValAndOp("12", "eq"))));
+
+        assertEquals(
+                List.of("CARBON", "ORBIT"),
+                underTest.list(sqlBuilder.buildDistinctValuesSql(filters, "product_name"), RowMapper.firstColumnAsString())
+        );
+    }
+
+    @Test
+    public void groupedSearchReturnsOneRowPerProduct(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+
+        List<ProductRow> rows = underTest.list(sqlBuilder.buildGroupedSearchSqlForWebFilters(filters, 0), ProductRow.MAPPER);
+
+        assertEquals(List.of(2L, 1L, 3L), rows.stream().map(ProductRow::productId).toList()); //rowsPerPage + 1 products
+        assertEquals(900.0, rows.get(0).minPrice());
+        assertEquals(List.of("10", "14"), rows.get(0).sizes());
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.humbletrader.fmak.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+
+/**
+ * a small catalog: 3 shops (EU, US and UK), 5 products and their attributes
+ */
+public class TestCatalog {
+
+    public static void create(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement()){
+            statement.execute("create table shops (id bigint primary key, country varchar(10))");
+            statement.execute("create table products (id bigint primary key, shop_id bigint, brand varchar(50), product_name varchar(50), " +
+                    "version varchar(50), year int, link varchar(200), category varchar(20), condition varchar(10), " +
+                    "subprod_name varchar(50), construction_tech varchar(50), brand_name_version varchar(200), visible_to_public boolean)");
+            statement.execute("create table product_attributes (id bigint primary key, product_id bigint, price double precision, size varchar(10))");
+
+            statement.execute("insert into shops values (1, 'EU'), (2, 'US'), (3, 'UK')");
+            statement.execute("insert into products values " +
+                    "(1, 1, 'NORTH', 'ORBIT', 'V1', 2023, 'http://eu/orbit', 'KITES', 'new', null, null, 'NORTH ORBIT V1', true), " +
+                    "(2, 1, 'CORE', 'XR', 'V7', 2022, 'http://eu/xr', 'KITES', 'new', null, null, 'CORE XR V7', true), " +
+                    "(3, 2, 'CORE', 'CARBON', 'V2', 2023, 'http://us/carbon', 'KITES', 'used', null, null, 'CORE CARBON V2', true), " +
+                    "(4, 3, 'DUOTONE', 'EVO', 'SLS', 2024, 'http://uk/evo', 'KITES', 'new', null, null, 'DUOTONE EVO SLS', true), " +
+                    "(5, 1, 'DUOTONE', 'TS', 'V1', 2024, 'http://eu/ts', 'BOARDS', 'new', null, null, 'DUOTONE TS V1', true)");
+            statement.execute("insert into product_attributes values " +
+                    "(11, 1, 1000.0, '9'), (12, 1, 1000.0, '12'), " +
+                    "(21, 2, 900.0, '10'), (22, 2, 950.0, '14'), " +
+                    "(31, 3, 1100.0, '12'), " +
+                    "(41, 4, 1200.0, '12'), " +
+                    "(51, 5, 500.0, '138')");
+        }
+    }
+
+    /**
+     * creates the part of the catalog belonging to the shops of the given countries (ie. a shard of the catalog)
+     */
+    public static void create(Connection connection, Set<String> countries) throws SQLException {
+        create(connection);
+        try(Statement statement = connection.createStatement()){
+            String otherShops = "select id from shops where country not in ('" + String.join("', '", countries) + "')";
+            statement.execute("delete from product_attributes where product_id in (select id from products where shop_id in (" + otherShops + "))");
+            statement.execute("delete from products where shop_id in (" + otherShops + ")");
+            statement.execute("delete from shops where id in (" + otherShops + ")");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.humbletrader.fmak.metrics;
+
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.QueryShape;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import com.github.humbletrader.fmak.stats.ColumnStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryMetricsTest {
+
+    private final QueryMetrics metrics = new QueryMetrics();
+    private final FmakSqlBuilder underTest = new FmakSqlBuilder(20, ColumnStatistics.fromPriorities(), metrics);
+
+    @Test
+    public void statementsAreAggregatedPerShape(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        filters.put("size", new LinkedHashSet<>(List.of(new SearchValAndOp("12", "eq"))));
+
+        underTest.buildSearchSqlForWebFilters(filters, 0);
+        underTest.buildSearchSqlForWebFilters(filters, 1);
+        String distinctSql = underTest.buildDistinctValuesSql(filters, "brand").getSqlWithoutParameters();
+
+        QueryMetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.statements());
+        assertEquals(3, snapshot.shopsJoins());
+        assertEquals(2, snapshot.attributesJoins());
+        assertEquals(1, snapshot.attributesInExists());
+        assertEquals(2 * 4 + 2, snapshot.totalParams());
+        assertTrue(snapshot.totalSqlLength() > distinctSql.length());
+        assertTrue(snapshot.p50BuildNanos() <= snapshot.p99BuildNanos());
+
+        var mostFrequent = snapshot.topShapes(1).getFirst();
+        assertEquals(QueryShape.Kind.SEARCH, mostFrequent.getKey().kind());
+        assertEquals(2L, (long) mostFrequent.getValue());
+    }
+
+    @Test
+    public void histogramBucketsHaveABoundedRelativeError(){
+        for(long value : new long[]{0, 7, 8, 15, 16, 1_000, 123_456_789, Long.MAX_VALUE}){
+            int bucket = LatencyHistogram.bucketOf(value);
+            long lowest = LatencyHistogram.lowestValueOf(bucket);
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(lowest <= value && value <= highest, "value " + value + " not in [" + lowest + ", " + highest + "]");
+            assertTrue(highest - lowest <= lowest / 8, "bucket too wide for " + value);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 100; i++){
+            histogram.record(i * 1_000L);
+        }
+        long median = histogram.valueAtPercentile(50);
+        assertTrue(median >= 50_000 && median <= 50_000 * 9 / 8, "median " + median);
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.humbletrader.fmak.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CachingFmakSqlBuilderTest {
+
+    private FmakSqlBuilder notCaching = new FmakSqlBuilder(20);
+    private CachingFmakSqlBuilder underTest = new CachingFmakSqlBuilder(notCaching, 100);
+
+    @Test
+    public void sameShapeReusesSqlAndBindsNewParameters(){
+        Map<String, SequencedSet<SearchValAndOp>> first = new HashMap<>();
+        first.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        first.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("UK", "eq"))));
+        first.put("price", new LinkedHashSet<>(List.of(new SearchValAndOp("1000", "lt"))));
+
+        Map<String, SequencedSet<SearchValAndOp>> second = new HashMap<>();
+        second.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("BOARDS", "eq"))));
+        second.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        second.put("price", new LinkedHashSet<>(List.of(new SearchValAndOp("500", "lt"))));
+
+        ParameterizedStatement firstResult = underTest.buildSearchSqlForWebFilters(first, 0);
+        ParameterizedStatement secondResult = underTest.buildSearchSqlForWebFilters(second, 3);
+
+        assertSame(firstResult.getSqlWithoutParameters(), secondResult.getSqlWithoutParameters());
+        assertEquals(notCaching.buildSearchSqlForWebFilters(second, 3).getSqlWithoutParameters(), secondResult.getSqlWithoutParameters());
+        assertEquals(Arrays.asList("BOARDS", "EU", 500.0, 21, 60), secondResult.getParamValues());
+        assertEquals(1, underTest.stats().missCount());
+        assertEquals(1, underTest.stats().hitCount());
+    }
+
+    @Test
+    public void differentOperatorsOrValueCountsAreDifferentShapes(){
+        Map<String, SequencedSet<SearchValAndOp>> oneSize = new HashMap<>();
+        oneSize.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        oneSize.put("size", new LinkedHashSet<>(List.of(new SearchValAndOp("12", "eq"))));
+
+        Map<String, SequencedSet<SearchValAndOp>> sizeRange = new HashMap<>();
+        sizeRange.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        sizeRange.put("size", new LinkedHashSet<>(List.of(new SearchValAndOp("12", "gt"), new SearchValAndOp("15", "lt"))));
+
+        underTest.buildDistinctValuesSql(oneSize, "brand");
+        ParameterizedStatement result = underTest.buildDistinctValuesSql(sizeRange, "brand");
+        underTest.buildDistinctValuesSql(sizeRange, "product_name");
+
+        assertEquals(notCaching.buildDistinctValuesSql(sizeRange, "brand").getSqlWithoutParameters(), result.getSqlWithoutParameters());
+        assertEquals(List.of("EU", "12", "15"), result.getParamValues());
+        assertEquals(3, underTest.stats().missCount());
+        assertEquals(0, underTest.stats().hitCount());
+        assertEquals(3, underTest.size());
+    }
+
+    @Test
+    public void numberOfAnyValuesDoesNotChangeTheShape(){
+        Map<String, SequencedSet<SearchValAndOp>> twoBrands = new HashMap<>();
+        twoBrands.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        twoBrands.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "any"), new SearchValAndOp("NORTH", "any"))));
+
+        Map<String, SequencedSet<SearchValAndOp>> threeBrands = new HashMap<>();
+        threeBrands.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        threeBrands.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "any"), new SearchValAndOp("NORTH", "any"), new SearchValAndOp("OZONE", "any"))));
+
+        underTest.buildDistinctValuesSql(twoBrands, "size");
+        ParameterizedStatement result = underTest.buildDistinctValuesSql(threeBrands, "size");
+
+        assertEquals(1, underTest.stats().hitCount());
+        assertEquals("EU", result.getParamValues().get(0));
+        assertArrayEquals(new String[]{"CORE", "NORTH", "OZONE"}, (Object[]) result.getParamValues().get(1));
+    }
+
+    @Test
+    public void cacheHitsAreReportedToTheListener(){
+        List<QueryBuildEvent> events = Collections.synchronizedList(new ArrayList<>());
+        CachingFmakSqlBuilder reporting = new CachingFmakSqlBuilder(new FmakSqlBuilder(20, notCaching.statistics(), events::add), 100);
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+
+        reporting.buildSearchSqlForWebFilters(filters, 0);
+        reporting.buildSearchSqlForWebFilters(filters, 1);
+        reporting.buildDistinctValuesSql(filters, "brand");
+        reporting.buildDistinctValuesSql(filters, "brand");
+
+        assertEquals(2, reporting.stats().hitCount()); //one hit per kind of statement
+        assertEquals(List.of(QueryShape.Kind.SEARCH, QueryShape.Kind.SEARCH, QueryShape.Kind.DISTINCT, QueryShape.Kind.DISTINCT),
+                events.stream().map(event -> event.shape().kind()).toList());
+        assertEquals(events.get(0).joinedTables(), events.get(1).joinedTables());
+        assertEquals(events.get(2).paramCount(), events.get(3).paramCount());
+    }
+}
@@ -1,10 +1,20 @@
 package com.github.humbletrader.fmak.query;
 
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import com.github.humbletrader.fmak.stats.SnapshotColumnStatistics;
+import com.github.humbletrader.fmak.tables.ProductAttributesTable;
+import com.github.humbletrader.fmak.tables.ProductTable;
+import com.github.humbletrader.fmak.tables.ShopTable;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class FmakSqlBuilderTest {
 
@@ -32,7 +42,7 @@ class FmakSqlBuilderTest {
     }
 
     @Test
-    public void sqlShouldContainAJoinWhenSizeIsInFilter(){
+    public void sqlShouldContainAnExistsWhenSizeIsInFilter(){
         Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
         filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
         filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
@@ -44,11 +54,10 @@ class FmakSqlBuilderTest {
                 "select distinct p.product_name " +
                         "from products p "+
                         "inner join shops s on s.id = p.shop_id "+
-                        "inner join product_attributes a on p.id = a.product_id " +
                         "where p.category = ? "+
                         "and s.country = ? " +
                         "and p.product_name = ? "+
-                        "and a.size = ? "+
+                        "and exists (select 1 from product_attributes a where a.product_id = p.id and a.size = ?) "+
                         "order by p.product_name",
                 result.getSqlWithoutParameters()
         );
@@ -158,4 +167,530 @@ class FmakSqlBuilderTest {
         assertEquals(Arrays.asList("KITES", "USA", "17.0", 1000.0, 21, 20), result.getParamValues());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void facetValuesForSeveralColumnsInOneStatement(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+
+        ParameterizedStatement result = underTest.buildFacetValuesSql(filters, new LinkedHashSet<>(List.of(SupportedFilter.brand, SupportedFilter.year, SupportedFilter.size)));
+        assertEquals(
+                "select 'brand' as facet, cast(p.brand as varchar) as facet_value " +
+                        "from products p " +
+                        "inner join shops s on s.id = p.shop_id " +
+                        "where p.category = ? and s.country = ? " +
+                        "group by p.brand " +
+                "union all " +
+                "select 'year' as facet, cast(p.year as varchar) as facet_value " +
+                        "from products p " +
+                        "inner join shops s on s.id = p.shop_id " +
+                        "where p.category = ? and s.country = ? and year <> -1 and year <> -2 " +
+                        "group by p.year " +
+                "union all " +
+                "select 'size' as facet, cast(a.size as varchar) as facet_value " +
+                        "from products p " +
+                        "inner join shops s on s.id = p.shop_id " +
+                        "inner join product_attributes a on p.id = a.product_id " +
+                        "where p.category = ? and s.country = ? " +
+                        "group by a.size",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(List.of("KITES", "EU", "KITES", "EU", "KITES", "EU"), result.getParamValues());
+    }
+
+    @Test
+    public void facetValuesAreSplitAndSortedPerFacet(){
+        FacetValues facetValues = new FacetValues(new LinkedHashSet<>(List.of(SupportedFilter.year, SupportedFilter.brand, SupportedFilter.version)))
+                .add("brand", "NORTH")
+                .add("year", "2023")
+                .add("brand", "DUOTONE")
+                .add("year", "999")
+                .add("year", "2022");
+
+        assertEquals(List.of("999", "2022", "2023"), facetValues.valuesOf(SupportedFilter.year));
+        assertEquals(List.of("DUOTONE", "NORTH"), facetValues.valuesOf(SupportedFilter.brand));
+        assertEquals(List.of(), facetValues.valuesOf(SupportedFilter.version));
+        assertEquals(List.of(SupportedFilter.year, SupportedFilter.brand, SupportedFilter.version), List.copyOf(facetValues.asMap().keySet()));
+    }
+
+    @Test
+    public void distinctValuesWithCountOrderedByCount(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+
+        ParameterizedStatement result = underTest.buildDistinctValuesWithCountSql(filters, "brand", FacetCountOrder.COUNT, 10);
+        assertEquals(
+                "select p.brand, count(*) as cnt " +
+                        "from products p " +
+                        "inner join shops s on s.id = p.shop_id " +
+                        "where p.category = ? " +
+                        "and s.country = ? " +
+                        "group by p.brand " +
+                        "order by cnt desc, p.brand limit ?",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(List.of("KITES", "EU", 10), result.getParamValues());
+    }
+
+    @Test
+    public void distinctValuesWithCountFiltersAttributesWithExists(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        filters.put("price", new LinkedHashSet<>(List.of(new SearchValAndOp("1000", "lt"))));
+
+        ParameterizedStatement result = underTest.buildDistinctValuesWithCountSql(filters, "year", FacetCountOrder.VALUE, 0);
+        assertEquals(
+                "select p.year, count(*) as cnt " +
+                        "from products p " +
+                        "inner join shops s on s.id = p.shop_id " +
+                        "where p.category = ? " +
+                        "and s.country = ? " +
+                        "and exists (select 1 from product_attributes a where a.product_id = p.id and a.price < ?) " +
+                        "and year <> -1 and year <> -2 " +
+                        "group by p.year " +
+                        "order by p.year",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(List.of("KITES", "EU", 1000.0), result.getParamValues());
+    }
+
+    @Test
+    public void searchSqlFirstPageWithKeysetPagination(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("UK", "eq"))));
+
+        ParameterizedStatement result = underTest.buildSearchSqlForWebFilters(filters, (SearchCursor) null);
+        assertEquals("select p.brand_name_version, p.link, a.price, a.size, p.condition, p.visible_to_public, a.id "+
+                        "from products p " +
+                        "inner join shops s on s.id = p.shop_id "+
+                        "inner join product_attributes a on p.id = a.product_id " +
+                        "where p.category = ? " +
+                        "and s.country = ? "+
+                        "order by a.price, a.id limit ?",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(Arrays.asList("KITES", "UK", 21), result.getParamValues());
+    }
+
+    @Test
+    public void searchSqlNextPageWithKeysetPagination(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("UK", "eq"))));
+
+        SearchCursor cursor = SearchCursor.fromToken(SearchCursor.of(899.99, 12345L).toToken());
+        ParameterizedStatement result = underTest.buildSearchSqlForWebFilters(filters, cursor);
+        assertEquals("select p.brand_name_version, p.link, a.price, a.size, p.condition, p.visible_to_public, a.id "+
+                        "from products p " +
+                        "inner join shops s on s.id = p.shop_id "+
+                        "inner join product_attributes a on p.id = a.product_id " +
+                        "where p.category = ? " +
+                        "and s.country = ? "+
+                        "and (a.price, a.id) > (?, ?) " +
+                        "order by a.price, a.id limit ?",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(Arrays.asList("KITES", "UK", 899.99, 12345L, 21), result.getParamValues());
+    }
+
+    @Test
+    public void keysetPaginationWithoutCriteria(){
+        assertEquals("select p.brand_name_version, p.link, a.price, a.size, p.condition, p.visible_to_public, a.id "+
+                        "from products p " +
+                        "inner join product_attributes a on p.id = a.product_id " +
+                        "order by a.price, a.id limit ?",
+                underTest.buildSearchSqlForWebFilters(new HashMap<>(), (SearchCursor) null).getSqlWithoutParameters()
+        );
+        ParameterizedStatement nextPage = underTest.buildSearchSqlForWebFilters(new HashMap<>(), SearchCursor.of(500.0, 7L));
+        assertEquals("select p.brand_name_version, p.link, a.price, a.size, p.condition, p.visible_to_public, a.id "+
+                        "from products p " +
+                        "inner join product_attributes a on p.id = a.product_id " +
+                        "where (a.price, a.id) > (?, ?) " +
+                        "order by a.price, a.id limit ?",
+                nextPage.getSqlWithoutParameters()
+        );
+        assertEquals(Arrays.asList(500.0, 7L, 21), nextPage.getParamValues());
+    }
+
+    @Test
+    public void distinctValuesWithoutCriteria(){
+        assertEquals("select distinct p.year from products p where year <> -1 and year <> -2 order by p.year",
+                underTest.buildDistinctValuesSql(new HashMap<>(), "year").getSqlWithoutParameters());
+        assertEquals("select distinct p.brand from products p order by p.brand",
+                underTest.buildDistinctValuesSql(new HashMap<>(), "brand").getSqlWithoutParameters());
+    }
+
+    @Test
+    public void invalidSearchCursorToken(){
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.fromToken("not a cursor"));
+    }
+
+    @Test
+    public void anyValuesAreBoundAsASingleArray(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        filters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("DUOTONE", "any"), new SearchValAndOp("NORTH", "any"), new SearchValAndOp("CORE", "any"))));
+        filters.put("year", new LinkedHashSet<>(List.of(new SearchValAndOp("2020", "gte"), new SearchValAndOp("2022", "any"), new SearchValAndOp("2023", "any"))));
+
+        ParameterizedStatement result = underTest.buildDistinctValuesSql(filters, "product_name");
+        assertEquals(
+                "select distinct p.product_name "+
+                        "from products p "+
+                        "inner join shops s on s.id = p.shop_id "+
+                        "where s.country = ? "+
+                        "and p.brand = any(?) "+
+                        "and p.year >= ? "+
+                        "and p.year = any(?) "+
+                        "order by p.product_name",
+                result.getSqlWithoutParameters()
+        );
+        List<Object> params = result.getParamValues();
+        assertEquals(4, params.size());
+        assertEquals("EU", params.get(0));
+        assertArrayEquals(new String[]{"DUOTONE", "NORTH", "CORE"}, (Object[]) params.get(1));
+        assertEquals(2020, params.get(2));
+        assertArrayEquals(new Integer[]{2022, 2023}, (Object[]) params.get(3));
+    }
+
+    @Test
+    public void distinctValuesWithCountCountsProductsForAttributeColumns(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("price", new LinkedHashSet<>(List.of(new SearchValAndOp("1000", "lt"))));
+
+        ParameterizedStatement result = underTest.buildDistinctValuesWithCountSql(filters, "size", FacetCountOrder.VALUE, 0);
+        assertEquals(
+                "select a.size, count(distinct p.id) as cnt " +
+                        "from products p " +
+                        "inner join product_attributes a on p.id = a.product_id " +
+                        "where p.category = ? " +
+                        "and a.price < ? " +
+                        "group by a.size " +
+                        "order by a.size",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(List.of("KITES", 1000.0), result.getParamValues());
+    }
+
+    @Test
+    public void shopsAreNotJoinedWithoutShopFilter(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+
+        ParameterizedStatement result = underTest.buildDistinctValuesSql(filters, "brand");
+        assertEquals(
+                "select distinct p.brand "+
+                        "from products p "+
+                        "where p.category = ? "+
+                        "order by p.brand",
+                result.getSqlWithoutParameters()
+        );
+    }
+
+    @Test
+    public void statisticsDecideConditionsOrder() throws IOException {
+        String snapshot = """
+                p.brand.cardinality=50
+                p.brand.value.DUOTONE=0.4
+                p.category.selectivity=0.25
+                s.country.selectivity=0.5
+                range.selectivity=0.3
+                """;
+        FmakSqlBuilder withStatistics = new FmakSqlBuilder(20, SnapshotColumnStatistics.load(new ByteArrayInputStream(snapshot.getBytes(StandardCharsets.UTF_8))));
+
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        filters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("DUOTONE", "eq"))));
+        filters.put("size", new LinkedHashSet<>(List.of(new SearchValAndOp("9", "gt"), new SearchValAndOp("12", "lt"))));
+
+        ParameterizedStatement result = withStatistics.buildDistinctValuesSql(filters, "product_name");
+        assertEquals(
+                "select distinct p.product_name "+
+                        "from products p "+
+                        "inner join shops s on s.id = p.shop_id "+
+                        "where p.category = ? "+
+                        "and p.brand = ? "+
+                        "and s.country = ? "+
+                        "and exists (select 1 from product_attributes a where a.product_id = p.id and a.size > ? and a.size < ?) "+
+                        "order by p.product_name",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(List.of("KITES", "DUOTONE", "EU", "9", "12"), result.getParamValues());
+    }
+
+    @Test
+    public void unknownFilterOrOperatorFailsBeforeRendering(){
+        Map<String, SequencedSet<SearchValAndOp>> unknownFilter = new HashMap<>();
+        unknownFilter.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        unknownFilter.put("colour", new LinkedHashSet<>(List.of(new SearchValAndOp("RED", "eq"))));
+        assertThrows(IllegalArgumentException.class, () -> underTest.buildSearchSqlForWebFilters(unknownFilter, 0));
+
+        Map<String, SequencedSet<SearchValAndOp>> unknownOperator = new HashMap<>();
+        unknownOperator.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "like"))));
+        assertThrows(IllegalArgumentException.class, () -> underTest.webFiltersToInternalFilters(unknownOperator));
+
+        assertThrows(IllegalArgumentException.class, () -> underTest.buildDistinctValuesSql(new HashMap<>(), "colour"));
+    }
+
+    @Test
+    public void cappedCountLimitsTheCountedRows(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+
+        CountQuery result = underTest.buildCappedCountSqlForWebFilters(filters, 1000);
+        assertEquals(
+                "select count(*) from (select 1 "+
+                        "from products p "+
+                        "inner join shops s on s.id = p.shop_id "+
+                        "inner join product_attributes a on p.id = a.product_id "+
+                        "where p.category = ? "+
+                        "and s.country = ? "+
+                        "limit ?) c",
+                result.statement().getSqlWithoutParameters()
+        );
+        assertEquals(Arrays.asList("KITES", "EU", 1001), result.statement().getParamValues());
+        assertEquals("42", result.parse("42").display());
+        assertEquals("1000+", result.parse("1001").display());
+    }
+
+    @Test
+    public void countsWithoutCriteria(){
+        assertEquals(
+                "select count(*) from (select 1 "+
+                        "from products p "+
+                        "inner join product_attributes a on p.id = a.product_id "+
+                        "limit ?) c",
+                underTest.buildCappedCountSqlForWebFilters(new HashMap<>(), 1000).statement().getSqlWithoutParameters()
+        );
+        assertEquals(
+                "explain (format json) select 1 "+
+                        "from products p "+
+                        "inner join product_attributes a on p.id = a.product_id",
+                underTest.buildEstimatedCountSqlForWebFilters(new HashMap<>()).statement().getSqlWithoutParameters()
+        );
+    }
+
+    @Test
+    public void estimatedCountReadsThePlannerRows(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "eq"))));
+
+        CountQuery result = underTest.buildEstimatedCountSqlForWebFilters(filters);
+        assertEquals(
+                "explain (format json) select 1 "+
+                        "from products p "+
+                        "inner join product_attributes a on p.id = a.product_id "+
+                        "where p.brand = ?",
+                result.statement().getSqlWithoutParameters()
+        );
+        String plan = """
+                [{"Plan": {"Node Type": "Hash Join", "Startup Cost": 10.5, "Plan Rows": 1234,
+                  "Plans": [{"Node Type": "Seq Scan", "Plan Rows": 99}]}}]
+                """;
+        assertEquals(new TotalCount(1234, TotalCount.Precision.ESTIMATE), result.parse(plan));
+        assertEquals("~1234", result.parse(plan).display());
+        assertThrows(IllegalArgumentException.class, () -> result.parse("[]"));
+    }
+
+    @Test
+    public void exportHasAStableOrderAndNoPagination(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+
+        ExportQuery result = underTest.buildExportSqlForWebFilters(filters, List.of(ProductTable.brand_name_version, ShopTable.country, ProductAttributesTable.price));
+        assertEquals(
+                "select p.brand_name_version, s.country, a.price "+
+                        "from products p "+
+                        "inner join shops s on s.id = p.shop_id "+
+                        "inner join product_attributes a on p.id = a.product_id "+
+                        "where p.category = ? "+
+                        "order by a.price, a.id",
+                result.statement().getSqlWithoutParameters()
+        );
+        assertEquals(List.of("KITES"), result.statement().getParamValues());
+
+        ExportQuery wholeCatalog = underTest.buildExportSql(new LinkedHashSet<>(), List.of(ProductTable.link));
+        assertEquals(
+                "select p.link from products p inner join product_attributes a on p.id = a.product_id order by a.price, a.id",
+                wholeCatalog.statement().getSqlWithoutParameters()
+        );
+    }
+
+    @Test
+    public void narrowProjectionElidesTheUnusedJoins(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("size", new LinkedHashSet<>(List.of(new SearchValAndOp("12", "eq"))));
+
+        ParameterizedStatement result = underTest.buildSearchSqlForWebFilters(filters, Projection.of(ProductTable.id, ProductTable.link), 1);
+        assertEquals(
+                "select p.id, p.link "+
+                        "from products p "+
+                        "where p.category = ? "+
+                        "and exists (select 1 from product_attributes a where a.product_id = p.id and a.size = ?) "+
+                        "order by p.id limit ? offset ?",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(Arrays.asList("KITES", "12", 21, 20), result.getParamValues());
+    }
+
+    @Test
+    public void aggregatedProjectionReturnsOneRowPerProduct(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "eq"))));
+
+        Projection projection = Projection.of(ProductTable.id, ShopTable.country)
+                .min(ProductAttributesTable.price)
+                .max(ProductAttributesTable.price);
+        ParameterizedStatement result = underTest.buildSearchSqlForWebFilters(filters, projection, 0);
+        assertEquals(
+                "select p.id, s.country, min(a.price) as min_price, max(a.price) as max_price "+
+                        "from products p "+
+                        "inner join shops s on s.id = p.shop_id "+
+                        "inner join product_attributes a on p.id = a.product_id "+
+                        "where p.brand = ? "+
+                        "group by p.id, s.country "+
+                        "order by min(a.price), p.id limit ? offset ?",
+                result.getSqlWithoutParameters()
+        );
+    }
+
+    @Test
+    public void arraysWithoutAttributesAreOrderedByTheirValues(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "eq"))));
+
+        Projection projection = Projection.of(ProductTable.id).array(ShopTable.country);
+        ParameterizedStatement result = underTest.buildSearchSqlForWebFilters(filters, projection, 0);
+        assertEquals(
+                "select p.id, array_agg(s.country order by s.country) as array_country "+
+                        "from products p "+
+                        "inner join shops s on s.id = p.shop_id "+
+                        "where p.brand = ? "+
+                        "group by p.id "+
+                        "order by p.id limit ? offset ?",
+                result.getSqlWithoutParameters()
+        );
+    }
+
+    @Test
+    public void searchRowProjectionIsTheDefaultSearch(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("brand", new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "eq"))));
+
+        assertEquals(
+                underTest.buildSearchSqlForWebFilters(filters, 2).getSqlWithoutParameters(),
+                underTest.buildSearchSqlForWebFilters(filters, Projection.SEARCH_ROW, 2).getSqlWithoutParameters()
+        );
+    }
+
+    @Test
+    public void groupedSearchPagesOverProducts(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("price", new LinkedHashSet<>(List.of(new SearchValAndOp("1000", "lte"))));
+
+        ParameterizedStatement result = underTest.buildGroupedSearchSqlForWebFilters(filters, 1);
+        assertEquals(
+                "select p.id, p.brand_name_version, p.link, p.condition, p.visible_to_public, "+
+                        "min(a.price) as min_price, array_agg(a.size order by a.price) as array_size "+
+                        "from products p "+
+                        "inner join product_attributes a on p.id = a.product_id "+
+                        "where p.category = ? "+
+                        "and a.price <= ? "+
+                        "group by p.id, p.brand_name_version, p.link, p.condition, p.visible_to_public "+
+                        "order by min(a.price), p.id limit ? offset ?",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(Arrays.asList("KITES", 1000.0, 21, 20), result.getParamValues());
+    }
+
+    @Test
+    public void autocompleteSearchesThePrefixAsARange(){
+        Map<String, SequencedSet<SearchValAndOp>> filters = new HashMap<>();
+        filters.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        filters.put("size", new LinkedHashSet<>(List.of(new SearchValAndOp("12", "eq"))));
+
+        ParameterizedStatement result = underTest.buildAutocompleteSql(filters, "product_name", "Or", 10);
+        assertEquals(
+                "select distinct on (lower(p.product_name) collate \"C\") p.product_name "+
+                        "from products p "+
+                        "where p.category = ? "+
+                        "and exists (select 1 from product_attributes a where a.product_id = p.id and a.size = ?) "+
+                        "and lower(p.product_name) collate \"C\" >= ? and lower(p.product_name) collate \"C\" < ? "+
+                        "order by lower(p.product_name) collate \"C\", p.product_name limit ?",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(Arrays.asList("KITES", "12", "or", "os", 10), result.getParamValues());
+
+        ParameterizedStatement noCriteria = underTest.buildAutocompleteSql(new HashMap<>(), "brand", "", 5);
+        assertEquals(
+                "select distinct on (lower(p.brand) collate \"C\") p.brand from products p where p.brand is not null " +
+                        "order by lower(p.brand) collate \"C\", p.brand limit ?",
+                noCriteria.getSqlWithoutParameters()
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> underTest.buildAutocompleteSql(new HashMap<>(), "year", "20", 5));
+        assertEquals(null, FmakSqlBuilder.prefixUpperBound(Character.toString(Character.MAX_CODE_POINT)));
+        assertEquals("b", FmakSqlBuilder.prefixUpperBound("a" + Character.toString(Character.MAX_CODE_POINT)));
+        assertEquals(Character.toString(0x10000), FmakSqlBuilder.prefixUpperBound(String.valueOf(Character.MAX_VALUE)));
+        assertEquals("a\uE000", FmakSqlBuilder.prefixUpperBound("a\uD7FF"));
+    }
+
+    @Test
+    public void coveredDistinctValuesAreReadFromTheRollup(){
+        RollupDefinition rollup = RollupDefinition.of(SupportedFilter.country, SupportedFilter.category, SupportedFilter.brand, SupportedFilter.year);
+        FmakSqlBuilder withRollup = underTest.withRollup(rollup);
+
+        Map<String, SequencedSet<SearchValAndOp>> covered = new HashMap<>();
+        covered.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+        covered.put("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq"))));
+        ParameterizedStatement result = withRollup.buildDistinctValuesSql(covered, "year");
+        assertEquals(
+                "select distinct r.year from facet_rollup r where r.category = ? and r.country = ? "+
+                        "and year <> -1 and year <> -2 order by r.year",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(List.of("KITES", "EU"), result.getParamValues());
+
+        assertEquals(
+                "select distinct r.brand from facet_rollup r order by r.brand",
+                withRollup.buildDistinctValuesSql(new HashMap<>(), "brand").getSqlWithoutParameters()
+        );
+
+        Map<String, SequencedSet<SearchValAndOp>> notCovered = new HashMap<>(covered);
+        notCovered.put("size", new LinkedHashSet<>(List.of(new SearchValAndOp("12", "eq"))));
+        assertEquals(
+                underTest.buildDistinctValuesSql(notCovered, "year").getSqlWithoutParameters(),
+                withRollup.buildDistinctValuesSql(notCovered, "year").getSqlWithoutParameters()
+        );
+        assertEquals(
+                underTest.buildDistinctValuesSql(covered, "product_name").getSqlWithoutParameters(),
+                withRollup.buildDistinctValuesSql(covered, "product_name").getSqlWithoutParameters()
+        );
+    }
+
+    @Test
+    public void rollupDdlGroupsTheBaseColumns(){
+        RollupDefinition rollup = RollupDefinition.of(SupportedFilter.brand, SupportedFilter.country);
+
+        assertEquals(
+                "create materialized view if not exists facet_rollup as select s.country, p.brand, count(*) as product_count "+
+                        "from products p inner join shops s on s.id = p.shop_id group by s.country, p.brand",
+                rollup.createSql()
+        );
+        assertEquals(
+                List.of("create index if not exists idx_facet_rollup_country on facet_rollup (country)",
+                        "create index if not exists idx_facet_rollup_brand on facet_rollup (brand)"),
+                rollup.createIndexesSql()
+        );
+        assertEquals("refresh materialized view facet_rollup", rollup.refreshSql());
+        assertThrows(IllegalArgumentException.class, () -> RollupDefinition.of(SupportedFilter.size));
+    }
+
+}
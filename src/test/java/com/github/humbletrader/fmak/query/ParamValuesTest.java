@@ -0,0 +1,98 @@
+package com.github.humbletrader.fmak.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParamValuesTest {
+
+    @Test
+    public void valuesAreKeptTypedAndBoxedOnlyOnRequest(){
+        ParamValues underTest = new ParamValues(1)
+                .add("KITES")
+                .add(21)
+                .add(12345L)
+                .add(999.5)
+                .add("2022", SqlType.INT_TYPE);
+
+        assertEquals(5, underTest.size());
+        assertEquals(Arrays.asList("KITES", 21, 12345L, 999.5, 2022), underTest.asList());
+    }
+
+    @Test
+    public void bindToCallsTheTypedSetters() throws SQLException {
+        List<String> calls = new ArrayList<>();
+        Connection connection = (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    calls.add(method.getName() + args[0] + Arrays.toString((Object[]) args[1]));
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Array.class}, (p, m, a) -> null);
+                }
+        );
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    if(method.getName().equals("getConnection")){
+                        return connection;
+                    }
+                    calls.add(method.getName() + "(" + args[0] + ", " + (args[1] instanceof Array ? "array" : args[1]) + ")");
+                    return null;
+                }
+        );
+
+        new ParameterizedStatement("select ...", new ParamValues()
+                .add("EU")
+                .add(21)
+                .add(40L)
+                .add(1000.0)
+                .addArray(new Integer[]{2022, 2023}))
+                .bindTo(statement);
+
+        assertEquals(
+                List.of(
+                        "setString(1, EU)",
+                        "setInt(2, 21)",
+                        "setLong(3, 40)",
+                        "setDouble(4, 1000.0)",
+                        "createArrayOfinteger[2022, 2023]",
+                        "setArray(5, array)"
+                ),
+                calls
+        );
+    }
+
+    @Test
+    public void otherTypesAreBoundAsObjects() throws SQLException {
+        List<String> calls = new ArrayList<>();
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    calls.add(method.getName() + "(" + args[0] + ", " + args[1] + ")");
+                    return null;
+                }
+        );
+
+        ParamValues underTest = ParamValues.of(Arrays.asList("EU", new BigDecimal("999.90"), LocalDate.of(2024, 5, 1), null));
+        underTest.bindTo(statement);
+
+        assertEquals(Arrays.asList("EU", new BigDecimal("999.90"), LocalDate.of(2024, 5, 1), null), underTest.asList());
+        assertEquals(
+                List.of("setString(1, EU)", "setObject(2, 999.90)", "setObject(3, 2024-05-01)", "setString(4, null)"),
+                calls
+        );
+    }
+}
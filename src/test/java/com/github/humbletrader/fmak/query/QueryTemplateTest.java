@@ -0,0 +1,118 @@
+package com.github.humbletrader.fmak.query;
+
+import com.github.humbletrader.fmak.criteria.FilterOpVal;
+import com.github.humbletrader.fmak.criteria.SupportedFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryTemplateTest {
+
+    private final FmakSqlBuilder sqlBuilder = new FmakSqlBuilder(20);
+
+    @Test
+    public void boundSearchIsTheSameAsTheBuiltOne(){
+        CompiledQuery underTest = QueryTemplate.search()
+                .filter("country", "eq")
+                .filter("category", "eq")
+                .filter("brand", "any")
+                .compile(sqlBuilder);
+
+        ParameterizedStatement first = underTest.bind()
+                .set("country", "eq", "EU")
+                .set(SupportedFilter.category, SqlOperators.EQ, "KITES")
+                .setAny(SupportedFilter.brand, List.of("CORE", "NORTH"))
+                .page(2)
+                .build();
+        ParameterizedStatement second = underTest.bind()
+                .set("country", "eq", "UK")
+                .set("category", "eq", "BOARDS")
+                .set("brand", "any", "DUOTONE")
+                .build();
+
+        SequencedSet<FilterOpVal> criteria = new LinkedHashSet<>(List.of(
+                new FilterOpVal(SupportedFilter.country, new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "eq")))),
+                new FilterOpVal(SupportedFilter.category, new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq")))),
+                new FilterOpVal(SupportedFilter.brand, new LinkedHashSet<>(List.of(new SearchValAndOp("CORE", "any"), new SearchValAndOp("NORTH", "any"))))
+        ));
+        ParameterizedStatement built = sqlBuilder.buildSearchSql(criteria, 2);
+
+        assertEquals(built.getSqlWithoutParameters(), first.getSqlWithoutParameters());
+        assertEquals(built.toString(), first.toString());
+        assertSame(first.getSqlWithoutParameters(), second.getSqlWithoutParameters());
+        assertEquals("UK", second.getParamValues().get(0));
+        assertArrayEquals(new String[]{"DUOTONE"}, (Object[]) second.getParamValues().get(2));
+        assertEquals(List.of(21, 0), second.getParamValues().subList(3, 5));
+    }
+
+    @Test
+    public void slotsInExistsAreBoundAfterTheOtherConditions(){
+        CompiledQuery underTest = QueryTemplate.distinct("brand")
+                .filter("size", "gt", "lt")
+                .filter("category", "eq")
+                .compile(sqlBuilder);
+
+        ParameterizedStatement result = underTest.bind()
+                .set("size", "lt", "15")
+                .set("size", "gt", "9")
+                .set("category", "eq", "KITES")
+                .build();
+
+        assertEquals(
+                "select distinct p.brand from products p " +
+                        "where p.category = ? " +
+                        "and exists (select 1 from product_attributes a where a.product_id = p.id and a.size > ? and a.size < ?) " +
+                        "order by p.brand",
+                result.getSqlWithoutParameters()
+        );
+        assertEquals(List.of("KITES", "9", "15"), result.getParamValues());
+    }
+
+    @Test
+    public void errorsSurfaceWhenTheTemplateIsDeclaredOrBound(){
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("colour", "eq"));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("brand", "like"));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("brand", "eq", "eq"));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("brand", "eq").filter("brand", "ne"));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.distinct("colour"));
+        assertFalse(SqlType.BOOLEAN_TYPE.supports(SqlOperators.GT));
+
+        CompiledQuery compiled = QueryTemplate.search().filter("brand", "eq").compile(sqlBuilder);
+        assertThrows(IllegalArgumentException.class, () -> compiled.bind().set("brand", "ne", "CORE"));
+        assertThrows(IllegalStateException.class, () -> compiled.bind().build());
+    }
+
+    @Test
+    public void incompatibleOperatorsAreRejected(){
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("brand", "eq", "any"));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("year", "gt", "eq"));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("price", "any", "lt"));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("price", "gt", "gte"));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.search().filter("price", "lte", "lt"));
+
+        CompiledQuery compiled = QueryTemplate.search()
+                .filter("price", "gte", "lt")
+                .filter("brand", "ne", "any")
+                .compile(sqlBuilder);
+        assertEquals(4, compiled.slots().size());
+    }
+
+    @Test
+    public void boundValuesAreCheckedAgainstTheTypeOfTheColumn(){
+        CompiledQuery compiled = QueryTemplate.search()
+                .filter("year", "gte")
+                .filter("price", "any")
+                .compile(sqlBuilder);
+
+        assertThrows(IllegalArgumentException.class, () -> compiled.bind().set("year", "gte", "2024a"));
+        assertThrows(IllegalArgumentException.class, () -> compiled.bind().setAny(SupportedFilter.price, List.of("999", "cheap")));
+        assertThrows(IllegalArgumentException.class, () -> compiled.bind().set("year", "gte", null));
+        assertEquals(List.of(2024), compiled.bind().set("year", "gte", "2024").set("price", "any", "999.5").build().getParamValues().subList(0, 1));
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.humbletrader.fmak.shard;
+
+import com.github.humbletrader.fmak.jdbc.FmakQueryExecutor;
+import com.github.humbletrader.fmak.jdbc.SearchRow;
+import com.github.humbletrader.fmak.jdbc.TestCatalog;
+import com.github.humbletrader.fmak.query.FmakSqlBuilder;
+import com.github.humbletrader.fmak.query.SearchValAndOp;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShardedSearchTest {
+
+    private final FmakSqlBuilder sqlBuilder = new FmakSqlBuilder(2);
+    private final List<Connection> keepDbsAlive = new ArrayList<>();
+
+    @AfterEach
+    public void dropDbs() throws SQLException {
+        for(Connection connection : keepDbsAlive){
+            connection.close();
+        }
+    }
+
+    @Test
+    public void onlyShardsMatchingTheCountryAreQueried(){
+        CountryShard europe = new CountryShard("europe", Set.of("EU", "UK"), null);
+        CountryShard america = new CountryShard("america", Set.of("US"), null);
+        try(ShardedSearch underTest = new ShardedSearch(sqlBuilder, List.of(europe, america))){
+            assertEquals(List.of(europe, america), underTest.route(sqlBuilder.webFiltersToInternalFilters(Map.of())));
+            assertEquals(List.of(europe), underTest.route(sqlBuilder.webFiltersToInternalFilters(
+                    Map.of("country", new LinkedHashSet<>(List.of(new SearchValAndOp("UK", "eq")))))));
+            assertEquals(List.of(europe), underTest.route(sqlBuilder.webFiltersToInternalFilters(
+                    Map.of("country", new LinkedHashSet<>(List.of(new SearchValAndOp("US", "ne")))))));
+            assertEquals(List.of(europe, america), underTest.route(sqlBuilder.webFiltersToInternalFilters(
+                    Map.of("country", new LinkedHashSet<>(List.of(new SearchValAndOp("EU", "any"), new SearchValAndOp("US", "any")))))));
+        }
+    }
+
+    @Test
+    public void mergeSkipsThePreviousPagesAndRemovesDuplicateValues(){
+        List<List<Integer>> sorted = List.of(List.of(1, 4, 7), List.of(2, 3, 8), List.of());
+        assertEquals(List.of(3, 4, 7), ShardedSearch.merge(sorted, Comparator.naturalOrder(), 2, 3));
+
+        Comparator<String> numeric = Comparator.nullsLast(Comparator.comparingInt(Integer::parseInt));
+        assertEquals(
+                Arrays.asList("9", "10", "12", null),
+                ShardedSearch.mergeDistinct(List.of(Arrays.asList("9", "12", null), List.of("10", "12")), numeric)
+        );
+        //each shard sorted by a case insensitive collation
+        assertEquals(
+                List.of("Core", "NORTH", "Naish", "ozone"),
+                ShardedSearch.mergeDistinct(List.of(List.of("Core", "Naish", "NORTH"), List.of("NORTH", "ozone")), Comparator.naturalOrder())
+        );
+    }
+
+    @Test
+    public void pagesAreMergedAcrossShards() throws SQLException {
+        CountryShard europe = new CountryShard("europe", Set.of("EU", "UK"), shard(Set.of("EU", "UK")));
+        CountryShard america = new CountryShard("america", Set.of("US"), shard(Set.of("US")));
+        Map<String, SequencedSet<SearchValAndOp>> kites = new HashMap<>();
+        kites.put("category", new LinkedHashSet<>(List.of(new SearchValAndOp("KITES", "eq"))));
+
+        try(ShardedSearch underTest = new ShardedSearch(sqlBuilder, List.of(europe, america))){
+            assertEquals(List.of(900.0, 950.0, 1000.0), prices(underTest.search(kites, 0)));
+            assertEquals(List.of(1000.0, 1000.0, 1100.0), prices(underTest.search(kites, 1)));
+
+            List<SearchRow> firstPage = underTest.search(kites, null);
+            List<SearchRow> secondPage = underTest.search(kites, firstPage.get(1).cursor());
+            assertEquals(List.of(1000.0, 1000.0, 1100.0), prices(secondPage));
+            assertEquals(List.of(11L, 12L, 31L), secondPage.stream().map(SearchRow::attributeId).toList());
+
+            assertEquals(List.of("10", "12", "14", "9"), underTest.distinctValues(kites, "size"));
+        }
+    }
+
+    private static List<Double> prices(List<SearchRow> rows){
+        return rows.stream().map(SearchRow::price).toList();
+    }
+
+    private FmakQueryExecutor shard(Set<String> countries) throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR,VALUE");
+        Connection connection = dataSource.getConnection();
+        keepDbsAlive.add(connection);
+        TestCatalog.create(connection, countries);
+        return new FmakQueryExecutor(dataSource);
+    }
+}